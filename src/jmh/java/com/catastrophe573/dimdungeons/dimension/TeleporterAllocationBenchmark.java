@@ -0,0 +1,76 @@
+package com.catastrophe573.dimdungeons.dimension;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.minecraft.block.PortalInfo;
+import net.minecraft.util.math.vector.Vector3d;
+
+// what each trip through a portal costs before the player is actually moved, read the gc.alloc.rate.norm column from "gradlew jmh"
+// vanilla still needs a new PortalInfo for every trip, so both benchmarks make one
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TeleporterAllocationBenchmark
+{
+    private static final long WORLD_SEED = 573L;
+
+    private final CustomTeleporter teleporter = new CustomTeleporter();
+    private int trip = 0;
+
+    // the way CustomTeleporter used to work, which was constructed again for every teleport
+    private static class OldCustomTeleporter
+    {
+	final Random random;
+	Vector3d destPos;
+	float destYaw;
+	float destPitch;
+
+	OldCustomTeleporter(long seed)
+	{
+	    random = new Random(seed);
+	}
+
+	void setDestPos(double x, double y, double z, float yaw, float pitch)
+	{
+	    destPos = new Vector3d(x, y, z);
+	    destYaw = yaw;
+	    destPitch = pitch;
+	}
+
+	PortalInfo getPortalInfo()
+	{
+	    return new PortalInfo(destPos, Vector3d.ZERO, destYaw, destPitch);
+	}
+    }
+
+    @Benchmark
+    public PortalInfo newTeleporterPerTrip()
+    {
+	trip++;
+	OldCustomTeleporter tele = new OldCustomTeleporter(WORLD_SEED);
+	tele.setDestPos(trip, 55.1D, -trip, 180.0f, 0.0f);
+	return tele.getPortalInfo();
+    }
+
+    @Benchmark
+    public PortalInfo reusedTeleporter()
+    {
+	trip++;
+	teleporter.setDestPos(trip, 55.1D, -trip, 180.0f, 0.0f);
+	return teleporter.getPortalInfo(null, null, null);
+    }
+}
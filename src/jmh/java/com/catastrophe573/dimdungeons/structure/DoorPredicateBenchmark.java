@@ -0,0 +1,72 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonRoom;
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
+
+// the hasDoor predicates are called for every neighbor of every opening while a layout is designed
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DoorPredicateBenchmark
+{
+    private DungeonRoom[] rooms;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+	StubDungeonConfig.install();
+
+	// one finished advanced dungeon gives a realistic mix of every room type, rotation, and empty cell
+	DungeonBuilderLogic dbl = new DungeonBuilderLogic(new Random(573L), 0, 0, DungeonType.ADVANCED, 0);
+	dbl.calculateDungeonShape(46, true);
+	rooms = new DungeonRoom[64];
+	for (int i = 0; i < 8; i++)
+	{
+	    for (int j = 0; j < 8; j++)
+	    {
+		rooms[i * 8 + j] = dbl.finalLayout[i][j];
+	    }
+	}
+    }
+
+    // all four predicates for all 64 cells
+    @Benchmark
+    public void allDoors(Blackhole bh)
+    {
+	for (DungeonRoom room : rooms)
+	{
+	    bh.consume(room.hasDoorNorth());
+	    bh.consume(room.hasDoorSouth());
+	    bh.consume(room.hasDoorWest());
+	    bh.consume(room.hasDoorEast());
+	}
+    }
+
+    @Benchmark
+    public void northOnly(Blackhole bh)
+    {
+	for (DungeonRoom room : rooms)
+	{
+	    bh.consume(room.hasDoorNorth());
+	}
+    }
+}
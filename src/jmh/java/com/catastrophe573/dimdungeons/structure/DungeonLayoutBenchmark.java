@@ -0,0 +1,128 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
+
+// measures how designing a dungeon layout scales with the requested number of rooms, and how often the result comes up short
+// run with "gradlew jmh", and the results (including -prof gc allocation rates) are written to build/reports/jmh/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DungeonLayoutBenchmark
+{
+    // themed dungeons are basic dungeons with theme 1
+    @Param({ "BASIC", "ADVANCED", "THEMED" })
+    public String dungeonKind;
+
+    // 14, 25, and 46 are the default sizes of themed, basic, and advanced dungeons
+    @Param({ "14", "25", "46", "64" })
+    public int maxNumRooms;
+
+    private Random rand;
+    private DungeonType type;
+    private int theme;
+    private boolean useLarge;
+
+    // the room count distribution, reported next to the throughput as "events" per benchmark
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoomCounts
+    {
+	public long roomsPlaced;
+	public long underHalfSize;
+	public long underThreeQuarterSize;
+	public long reachedFullSize;
+
+	@Setup(Level.Iteration)
+	public void reset()
+	{
+	    roomsPlaced = 0;
+	    underHalfSize = 0;
+	    underThreeQuarterSize = 0;
+	    reachedFullSize = 0;
+	}
+
+	void record(DungeonBuilderLogic dbl, int maxNumRooms)
+	{
+	    int rooms = 0;
+	    for (int i = 0; i < 8; i++)
+	    {
+		for (int j = 0; j < 8; j++)
+		{
+		    if (dbl.finalLayout[i][j].hasRoom())
+		    {
+			rooms++;
+		    }
+		}
+	    }
+
+	    roomsPlaced += rooms;
+	    if (rooms * 2 < maxNumRooms)
+	    {
+		underHalfSize++;
+	    }
+	    if (rooms * 4 < maxNumRooms * 3)
+	    {
+		underThreeQuarterSize++;
+	    }
+	    if (rooms >= maxNumRooms)
+	    {
+		reachedFullSize++;
+	    }
+	}
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+	StubDungeonConfig.install();
+	rand = new Random(573L);
+	type = "ADVANCED".equals(dungeonKind) ? DungeonType.ADVANCED : DungeonType.BASIC;
+	theme = "THEMED".equals(dungeonKind) ? 1 : 0;
+	useLarge = type == DungeonType.ADVANCED;
+    }
+
+    @Benchmark
+    public DungeonBuilderLogic construct()
+    {
+	return new DungeonBuilderLogic(rand, 0, 0, type, theme);
+    }
+
+    @Benchmark
+    public DungeonBuilderLogic constructAndCalculateShape(RoomCounts counts)
+    {
+	DungeonBuilderLogic dbl = new DungeonBuilderLogic(rand, 0, 0, type, theme);
+	dbl.calculateDungeonShape(maxNumRooms, useLarge);
+	counts.record(dbl, maxNumRooms);
+	return dbl;
+    }
+
+    // the original ArrayList based version, to compare against DungeonLayoutEngine
+    @Benchmark
+    public DungeonBuilderLogic constructAndCalculateShapeReference(RoomCounts counts)
+    {
+	DungeonBuilderLogic dbl = new DungeonBuilderLogic(rand, 0, 0, type, theme);
+	new DungeonLayoutReference(dbl).calculateDungeonShape(maxNumRooms, useLarge);
+	counts.record(dbl, maxNumRooms);
+	return dbl;
+    }
+}
@@ -0,0 +1,252 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.ArrayList;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.RoomType;
+
+import net.minecraft.util.Direction;
+import net.minecraft.util.Rotation;
+
+// the original ArrayList based version of DungeonBuilderLogic.calculateDungeonShape(), kept only to benchmark and test DungeonLayoutEngine against
+// DungeonLayoutEngine must produce exactly the same layout from the same Random, so that seeds don't change, see DungeonLayoutEngineTest
+class DungeonLayoutReference
+{
+    private final DungeonBuilderLogic dbl;
+
+    DungeonLayoutReference(DungeonBuilderLogic dbl)
+    {
+	this.dbl = dbl;
+    }
+
+    public void calculateDungeonShape(int maxNumRooms, boolean useLarge)
+    {
+	//System.out.println("START CALC DUNGEON SHAPE");
+
+	// step 1: place a constant entrance at the center of the bottom row
+	dbl.placeRoomShape(4, 7, dbl.entrance.get(dbl.entranceIndex), RoomType.ENTRANCE, Rotation.NONE);
+	dbl.entranceIndex++;
+	int numRoomsPlaced = 1;
+
+	// step 2: create three openings off of the entrance room
+	ArrayList<ImmutablePair<Integer, Integer>> openings = new ArrayList<ImmutablePair<Integer, Integer>>();
+	openings.add(new ImmutablePair<Integer, Integer>(3, 7));
+	openings.add(new ImmutablePair<Integer, Integer>(5, 7));
+	openings.add(new ImmutablePair<Integer, Integer>(4, 6));
+
+	// step 3: if large rooms are enabled, place one somewhere, and put all those many doorways coming off it
+	if (useLarge)
+	{
+	    int largeX = dbl.rand.nextInt(7); // put the large room in any column, convention uses the top left corner, so use 0-6
+	    int largeZ = dbl.rand.nextInt(3) + 3; // start the large room on the 3rd, 4th, or 5th row
+
+	    dbl.placeRoomShape(largeX, largeZ, dbl.large.get(dbl.largeIndex), RoomType.LARGE, Rotation.NONE);
+	    numRoomsPlaced += 4;
+
+	    // for each of the 4 rooms in this large room, add openings for doorways as long as they don't lead out of bounds
+	    for (int xx = 0; xx < 2; xx++)
+	    {
+		for (int zz = 0; zz < 2; zz++)
+		{
+		    // calculate the coordinates of this quarter of the large room
+		    int roomX = largeX + xx;
+		    int roomZ = largeZ + zz;
+
+		    if (hasOpenDoor(roomX - 1, roomZ, Direction.EAST) && !dbl.finalLayout[roomX - 1][roomZ].hasRoom())
+		    {
+			openings.add(new ImmutablePair<Integer, Integer>(roomX - 1, roomZ));
+			//DimDungeons.LOGGER.info("Adding large opening " + (roomX-1) + ", " + roomZ);
+		    }
+		    if (hasOpenDoor(roomX + 1, roomZ, Direction.WEST) && !dbl.finalLayout[roomX + 1][roomZ].hasRoom())
+		    {
+			openings.add(new ImmutablePair<Integer, Integer>(roomX + 1, roomZ));
+			//DimDungeons.LOGGER.info("Adding large opening " + (roomX+1) + ", " + roomZ);
+		    }
+		    if (hasOpenDoor(roomX, roomZ - 1, Direction.SOUTH) && !dbl.finalLayout[roomX][roomZ - 1].hasRoom())
+		    {
+			openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ - 1));
+			//DimDungeons.LOGGER.info("Adding large opening " + roomX + ", " + (roomZ-1));
+		    }
+		    if (hasOpenDoor(roomX, roomZ + 1, Direction.NORTH) && !dbl.finalLayout[roomX][roomZ + 1].hasRoom())
+		    {
+			openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ + 1));
+			//DimDungeons.LOGGER.info("Adding large opening " + roomX + ", " + (roomZ+1));
+		    }
+		}
+	    }
+	}
+
+	// remaining rooms: for each opening, place a room that fits, and update openings, until no openings are left
+	shuffleArray(openings);
+	while (openings.size() > 0)
+	{
+	    ImmutablePair<Integer, Integer> roomPos = openings.remove(0);
+
+	    boolean mustPickEndings = false;
+	    boolean noEndingsYet = false;
+	    //DimDungeons.LOGGER.info("Processing opening " + roomPos.left + ", " + roomPos.right);
+
+	    // it can happen that an "opening" is in the list twice due to loops, in which case skip this loop
+	    if (dbl.finalLayout[roomPos.left][roomPos.right].hasRoom())
+	    {
+		continue;
+	    }
+
+	    // if this room has neighbors already then it must connect to them
+	    boolean mustConnectNorth = hasOpenDoor(roomPos.left, roomPos.right, Direction.NORTH);
+	    boolean mustConnectSouth = hasOpenDoor(roomPos.left, roomPos.right, Direction.SOUTH);
+	    boolean mustConnectWest = hasOpenDoor(roomPos.left, roomPos.right, Direction.WEST);
+	    boolean mustConnectEast = hasOpenDoor(roomPos.left, roomPos.right, Direction.EAST);
+
+	    // likewise some walls must be acknowledged as mutual too
+	    boolean cantConnectNorth = hasSolidWall(roomPos.left, roomPos.right, Direction.NORTH);
+	    boolean cantConnectSouth = hasSolidWall(roomPos.left, roomPos.right, Direction.SOUTH);
+	    boolean cantConnectWest = hasSolidWall(roomPos.left, roomPos.right, Direction.WEST);
+	    boolean cantConnectEast = hasSolidWall(roomPos.left, roomPos.right, Direction.EAST);
+
+	    // this puts the dungeon generation into "end it now" mode, where doors will no longer create more doors
+	    if (numRoomsPlaced + openings.size() >= maxNumRooms)
+	    {
+		mustPickEndings = true;
+	    }
+	    // this keeps the randomizer from putting dead ends too early in a dungeon path
+	    else if (numRoomsPlaced + openings.size() < maxNumRooms / 2)
+	    {
+		noEndingsYet = true;
+	    }
+
+	    // when mustPickEndings is false this is used to hold the list of valid possibilities
+	    ArrayList<ImmutablePair<RoomType, Rotation>> roomPossibilities = new ArrayList<ImmutablePair<RoomType, Rotation>>(0);
+
+	    // look at the neighboring doors and pick the room and rotation that connects them without making new openings
+	    ImmutablePair<RoomType, Rotation> shape = DungeonBuilderLogic.chooseRoomShape(mustConnectNorth, mustConnectSouth, mustConnectWest, mustConnectEast, cantConnectNorth, cantConnectSouth, cantConnectWest, cantConnectEast, mustPickEndings, noEndingsYet,
+		    roomPossibilities);
+	    RoomType nextType = shape.left;
+	    Rotation nextRot = shape.right;
+
+	    // if the previous block of code populated the roomPossibilities array then make a selection from it and use it instead
+	    // this code path represents more doorways being added and branching paths
+	    if (roomPossibilities.size() > 0 && !mustPickEndings)
+	    {
+		shuffleRoomPossibilities(roomPossibilities);
+		nextType = roomPossibilities.get(0).left;
+		nextRot = roomPossibilities.get(0).right;
+	    }
+
+	    // get the next random structure of this type and put it in there
+	    String nextRoom = dbl.nextStructure(nextType);
+
+	    // commit the room to the blueprint and open any potential new doors for the next loop to work with
+	    int roomX = roomPos.left;
+	    int roomZ = roomPos.right;
+	    dbl.placeRoomShape(roomX, roomZ, nextRoom, nextType, nextRot);
+	    numRoomsPlaced++;
+	    if (hasOpenDoor(roomX - 1, roomZ, Direction.EAST) && !dbl.finalLayout[roomX - 1][roomZ].hasRoom())
+	    {
+		openings.add(new ImmutablePair<Integer, Integer>(roomX - 1, roomZ));
+		//DimDungeons.LOGGER.info("Adding opening " + (roomX-1) + ", " + roomZ);
+	    }
+	    if (hasOpenDoor(roomX + 1, roomZ, Direction.WEST) && !dbl.finalLayout[roomX + 1][roomZ].hasRoom())
+	    {
+		openings.add(new ImmutablePair<Integer, Integer>(roomX + 1, roomZ));
+		//DimDungeons.LOGGER.info("Adding opening " + (roomX+1) + ", " + roomZ);
+	    }
+	    if (hasOpenDoor(roomX, roomZ - 1, Direction.SOUTH) && !dbl.finalLayout[roomX][roomZ - 1].hasRoom())
+	    {
+		openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ - 1));
+		//DimDungeons.LOGGER.info("Adding opening " + roomX + ", " + (roomZ-1));
+	    }
+	    if (hasOpenDoor(roomX, roomZ + 1, Direction.NORTH) && !dbl.finalLayout[roomX][roomZ + 1].hasRoom())
+	    {
+		openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ + 1));
+		//DimDungeons.LOGGER.info("Adding opening " + roomX + ", " + (roomZ+1));
+	    }
+
+	    // next loop - reshuffle the openings because we may have added some
+	    shuffleArray(openings);
+	    //DimDungeons.LOGGER.info("Num openings: " + openings.size());
+	}
+
+	//System.out.println("END CALC DUNGEON SHAPE");
+    }
+
+    // returns true if another chunk has a door leading into this chunk from the specified direction
+    // safe to call with x or y that are out of bounds
+    private boolean hasOpenDoor(int x, int z, Direction direction)
+    {
+	if (x < 0 || z < 0 || x > 7 || z > 7)
+	{
+	    return false;
+	}
+	if (direction == Direction.NORTH && z > 0)
+	{
+	    return dbl.finalLayout[x][z - 1].hasDoorSouth();
+	}
+	if (direction == Direction.SOUTH && z < 7)
+	{
+	    return dbl.finalLayout[x][z + 1].hasDoorNorth();
+	}
+	if (direction == Direction.WEST && x > 0)
+	{
+	    return dbl.finalLayout[x - 1][z].hasDoorEast();
+	}
+	if (direction == Direction.EAST && x < 7)
+	{
+	    return dbl.finalLayout[x + 1][z].hasDoorWest();
+	}
+	return false;
+    }
+
+    // returns true if the neighbor in this direction has placed a solid wall, and false if there is a door or no neighbor yet at all
+    // safe to call with x or y that are out of bounds
+    private boolean hasSolidWall(int x, int z, Direction direction)
+    {
+	if (x < 0 || z < 0 || x > 7 || z > 7)
+	{
+	    return true;
+	}
+	if (direction == Direction.NORTH && z > 0)
+	{
+	    return !dbl.finalLayout[x][z - 1].hasDoorSouth() && dbl.finalLayout[x][z - 1].hasRoom();
+	}
+	if (direction == Direction.SOUTH && z < 7)
+	{
+	    return !dbl.finalLayout[x][z + 1].hasDoorNorth() && dbl.finalLayout[x][z + 1].hasRoom();
+	}
+	if (direction == Direction.WEST && x > 0)
+	{
+	    return !dbl.finalLayout[x - 1][z].hasDoorEast() && dbl.finalLayout[x - 1][z].hasRoom();
+	}
+	if (direction == Direction.EAST && x < 7)
+	{
+	    return !dbl.finalLayout[x + 1][z].hasDoorWest() && dbl.finalLayout[x + 1][z].hasRoom();
+	}
+	return true;
+    }
+
+    private void shuffleArray(ArrayList<ImmutablePair<Integer, Integer>> array)
+    {
+	for (int i = array.size() - 1; i > 0; i--)
+	{
+	    int index = dbl.rand.nextInt(i + 1);
+
+	    ImmutablePair<Integer, Integer> temp = array.get(index);
+	    array.set(index, array.get(i));
+	    array.set(i, temp);
+	}
+    }
+
+    private void shuffleRoomPossibilities(ArrayList<ImmutablePair<RoomType, Rotation>> array)
+    {
+	for (int i = array.size() - 1; i > 0; i--)
+	{
+	    int index = dbl.rand.nextInt(i + 1);
+
+	    // Simple swap
+	    ImmutablePair<RoomType, Rotation> temp = array.get(index);
+	    array.set(index, array.get(i));
+	    array.set(i, temp);
+	}
+    }
+}
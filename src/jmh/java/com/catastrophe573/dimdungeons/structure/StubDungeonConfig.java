@@ -0,0 +1,55 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.ArrayList;
+
+import com.catastrophe573.dimdungeons.DungeonConfig;
+
+// fills in the parts of DungeonConfig that DungeonBuilderLogic reads, using the default room lists, without loading any config files or starting a server
+class StubDungeonConfig
+{
+    private static boolean installed = false;
+
+    static synchronized void install()
+    {
+	if (installed)
+	{
+	    return;
+	}
+
+	DungeonConfig.basicEntrances = DungeonConfig.defaultBasicEntrances();
+	DungeonConfig.basicFourways = DungeonConfig.defaultBasicFourways();
+	DungeonConfig.basicThreeways = DungeonConfig.defaultBasicThreeways();
+	DungeonConfig.basicHallways = DungeonConfig.defaultBasicHallways();
+	DungeonConfig.basicCorners = DungeonConfig.defaultBasicCorners();
+	DungeonConfig.basicEnds = DungeonConfig.defaultBasicEnds();
+
+	DungeonConfig.advancedEntrances = DungeonConfig.defaultAdvancedEntrances();
+	DungeonConfig.advancedFourways = DungeonConfig.defaultAdvancedFourways();
+	DungeonConfig.advancedThreeways = DungeonConfig.defaultAdvancedThreeways();
+	DungeonConfig.advancedHallways = DungeonConfig.defaultAdvancedHallways();
+	DungeonConfig.advancedCorners = DungeonConfig.defaultAdvancedCorners();
+	DungeonConfig.advancedEnds = DungeonConfig.defaultAdvancedEnds();
+	DungeonConfig.advancedLarge = DungeonConfig.defaultAdvancedLarge();
+
+	// the same default theme that the common config creates
+	DungeonConfig.themeSettings = new ArrayList<DungeonConfig.ThemeStructure>();
+	for (int i = 1; i <= DungeonConfig.DEFAULT_NUMBER_OF_THEMES; i++)
+	{
+	    DungeonConfig.ThemeStructure theme = new DungeonConfig.ThemeStructure();
+	    theme.themeEntrances = DungeonConfig.makeDefaultThemeRoomSet(i, "entrance", 3);
+	    theme.themeFourways = DungeonConfig.makeDefaultThemeRoomSet(i, "fourway", 6);
+	    theme.themeThreeways = DungeonConfig.makeDefaultThemeRoomSet(i, "threeway", 6);
+	    theme.themeHallways = DungeonConfig.makeDefaultThemeRoomSet(i, "hallway", 6);
+	    theme.themeCorners = DungeonConfig.makeDefaultThemeRoomSet(i, "corner", 6);
+	    theme.themeEnds = DungeonConfig.makeDefaultThemeRoomSet(i, "end", 6);
+	    theme.themeEnemySet1 = DungeonConfig.defaultThemeEnemySet1(i);
+	    theme.themeEnemySet2 = DungeonConfig.defaultThemeEnemySet2(i);
+	    theme.themeEnemyHealthScaling = 1.0f;
+	    theme.themeDungeonSize = DungeonConfig.DEFAULT_THEME_DUNGEON_SIZE;
+	    DungeonConfig.themeSettings.add(theme);
+	}
+	DungeonConfig.numberOfThemes = DungeonConfig.DEFAULT_NUMBER_OF_THEMES;
+
+	installed = true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.catastrophe573.dimdungeons.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.World;
+
+// isDimensionDungeon() runs at the start of nearly every event handler, so this measures what that costs per event
+// the keys are made the same way as World.OVERWORLD and DimDungeons.DUNGEON_DIMENSION, without loading the rest of the game
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DimensionCheckBenchmark
+{
+    private static final RegistryKey<Registry<World>> DIMENSION_REGISTRY = RegistryKey.createRegistryKey(new ResourceLocation("dimension"));
+    private static final RegistryKey<World> DUNGEON_DIMENSION = RegistryKey.create(DIMENSION_REGISTRY, new ResourceLocation("dimdungeons", "dungeon_dimension"));
+
+    // almost every event comes from a world that isn't the dungeon dimension
+    @Param({ "minecraft:overworld", "minecraft:the_nether", "dimdungeons:dungeon_dimension" })
+    public String dimension;
+
+    private RegistryKey<World> key;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+	key = RegistryKey.create(DIMENSION_REGISTRY, new ResourceLocation(dimension));
+    }
+
+    // the old check, which only worked because both strings happened to be the same instance
+    @Benchmark
+    public boolean pathIdentity()
+    {
+	return key.location().getPath() == "dungeon_dimension";
+    }
+
+    // what a correct string comparison would cost
+    @Benchmark
+    public boolean locationEquals()
+    {
+	return key.location().equals(DUNGEON_DIMENSION.location());
+    }
+
+    // the check that DungeonUtils.isDimensionDungeon() uses now
+    @Benchmark
+    public boolean keyIdentity()
+    {
+	return key == DUNGEON_DIMENSION;
+    }
+}
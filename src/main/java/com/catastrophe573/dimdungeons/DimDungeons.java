@@ -1,5 +1,8 @@
 package com.catastrophe573.dimdungeons;
 
+import java.util.function.Supplier;
+
+import com.catastrophe573.dimdungeons.block.PortalGroup;
 import com.catastrophe573.dimdungeons.block.TileEntityGoldPortal;
 import com.catastrophe573.dimdungeons.block.TileEntityLocalTeleporter;
 
@@ -8,6 +11,7 @@ import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.RenderTypeLookup;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemModelsProperties;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.tileentity.TileEntityType;
 import net.minecraft.util.RegistryKey;
 import net.minecraft.util.ResourceLocation;
@@ -16,6 +20,7 @@ import net.minecraft.world.World;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
@@ -24,8 +29,12 @@ import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModEnqueueEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModProcessEvent;
+import net.minecraftforge.fml.event.server.FMLServerAboutToStartEvent;
+import net.minecraftforge.fml.event.server.FMLServerStartedEvent;
 import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,10 +42,18 @@ import org.apache.logging.log4j.Logger;
 import com.catastrophe573.dimdungeons.block.BlockRegistrar;
 import com.catastrophe573.dimdungeons.block.TileEntityPortalKeyhole;
 import com.catastrophe573.dimdungeons.dimension.DungeonChunkGenerator;
+import com.catastrophe573.dimdungeons.dimension.DungeonDormancyManager;
+import com.catastrophe573.dimdungeons.dimension.TeleportScheduler;
 import com.catastrophe573.dimdungeons.item.ItemPortalKey;
 import com.catastrophe573.dimdungeons.item.ItemRegistrar;
 import com.catastrophe573.dimdungeons.item.ItemSecretBell;
+import com.catastrophe573.dimdungeons.structure.DungeonBuildScheduler;
+import com.catastrophe573.dimdungeons.structure.DungeonLayoutCache;
+import com.catastrophe573.dimdungeons.structure.DungeonSpawnManager;
+import com.catastrophe573.dimdungeons.structure.RoomTemplateCache;
+import com.catastrophe573.dimdungeons.utils.BlockProtectionPolicy;
 import com.catastrophe573.dimdungeons.utils.CommandDimDungeons;
+import com.catastrophe573.dimdungeons.utils.DungeonReclaimer;
 
 // The value here should match an entry in the META-INF/mods.toml file
 @Mod("dimdungeons")
@@ -45,6 +62,9 @@ public class DimDungeons
     // Directly reference a log4j logger.
     private static final Logger LOGGER = LogManager.getLogger();
 
+    // a separate logger for logGenerationEvent(), so that a log4j config can send those lines somewhere else
+    private static final Logger GENERATION_LOGGER = LogManager.getLogger("dimdungeons.generation");
+
     // constants used by other classes
     public static final String MOD_ID = "dimdungeons"; // this must match mods.toml
     public static final String RESOURCE_PREFIX = MOD_ID + ":";
@@ -68,6 +88,10 @@ public class DimDungeons
 	//MinecraftForge.EVENT_BUS.register(this);
 	MinecraftForge.EVENT_BUS.register(eventHandler);
 	MinecraftForge.EVENT_BUS.addListener(this::registerCommands);
+	MinecraftForge.EVENT_BUS.addListener(this::serverAboutToStart);
+	MinecraftForge.EVENT_BUS.addListener(this::serverStarted);
+	MinecraftForge.EVENT_BUS.addListener(this::serverTick);
+	MinecraftForge.EVENT_BUS.addListener(this::serverStopping);
 
 	ModLoadingContext.get().registerConfig(ModConfig.Type.SERVER, DungeonConfig.SERVER_SPEC);
 	ModLoadingContext.get().registerConfig(ModConfig.Type.CLIENT, DungeonConfig.CLIENT_SPEC);
@@ -126,6 +150,15 @@ public class DimDungeons
 	else if (config.getSpec() == DungeonConfig.SERVER_SPEC)
 	{
 	    DungeonConfig.refreshServer();
+	    DungeonLayoutCache.clear();
+
+	    // the room cache depends on the room lists, and config reloads happen on another thread
+	    MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+	    if (server != null)
+	    {
+		server.execute(() -> RoomTemplateCache.rebuild(server));
+		server.execute(() -> BlockProtectionPolicy.rebuild(true));
+	    }
 	}
     }
 
@@ -134,6 +167,38 @@ public class DimDungeons
 	CommandDimDungeons.register(evt.getDispatcher());
     }
 
+    private void serverAboutToStart(FMLServerAboutToStartEvent evt)
+    {
+	DungeonReclaimer.deleteReclaimedRegions(evt.getServer());
+    }
+
+    private void serverStarted(FMLServerStartedEvent evt)
+    {
+	DungeonReclaimer.finishReclaimedRegions(evt.getServer());
+    }
+
+    private void serverTick(TickEvent.ServerTickEvent evt)
+    {
+	if (evt.phase == TickEvent.Phase.END)
+	{
+	    DungeonBuildScheduler.tick(ServerLifecycleHooks.getCurrentServer());
+	    TeleportScheduler.tick(ServerLifecycleHooks.getCurrentServer());
+	    DungeonSpawnManager.tick(ServerLifecycleHooks.getCurrentServer());
+	    DungeonDormancyManager.tick(ServerLifecycleHooks.getCurrentServer());
+	    DungeonReclaimer.tick(ServerLifecycleHooks.getCurrentServer());
+	}
+    }
+
+    private void serverStopping(FMLServerStoppingEvent evt)
+    {
+	DungeonBuildScheduler.finishAll(evt.getServer());
+	DungeonLayoutCache.clear();
+	PortalGroup.clear();
+	TeleportScheduler.clear();
+	DungeonDormancyManager.clear();
+	DungeonReclaimer.clear();
+    }
+
     // You can use EventBusSubscriber to automatically subscribe events on the contained class (this is subscribing to the MOD event bus
     @Mod.EventBusSubscriber(bus = Mod.EventBusSubscriber.Bus.MOD, modid = DimDungeons.MOD_ID)
     public static class RegistryEvents
@@ -178,24 +243,110 @@ public class DimDungeons
 	//}
     }
 
+    // the logLevel config option, parsed once when the config is loaded instead of compared as a string on every message
+    public enum LogLevel
+    {
+	ALL, WARN, ERROR;
+
+	// anything unrecognized means errors only, the same as before this was an enum
+	public static LogLevel parse(String name)
+	{
+	    if (name.equalsIgnoreCase("all") || name.equalsIgnoreCase("info"))
+	    {
+		return ALL;
+	    }
+	    if (name.equalsIgnoreCase("warn"))
+	    {
+		return WARN;
+	    }
+	    return ERROR;
+	}
+    }
+
+    public static boolean isInfoEnabled()
+    {
+	return DungeonConfig.parsedLogLevel == LogLevel.ALL;
+    }
+
+    public static boolean isWarnEnabled()
+    {
+	return DungeonConfig.parsedLogLevel != LogLevel.ERROR;
+    }
+
     public static void logMessageInfo(String message)
     {
-	if (DungeonConfig.logLevel.equalsIgnoreCase("all") || DungeonConfig.logLevel.equalsIgnoreCase("info"))
+	if (isInfoEnabled())
 	{
 	    DimDungeons.LOGGER.info(message);
 	}
     }
 
+    // the message is only built if it is actually going to be logged, for anything that is logged once per room or per teleport
+    public static void logMessageInfo(Supplier<String> message)
+    {
+	if (isInfoEnabled())
+	{
+	    DimDungeons.LOGGER.info(message.get());
+	}
+    }
+
+    // uses log4j's {} placeholders, so the arguments are only turned into strings if the message is logged
+    public static void logMessageInfo(String format, Object... args)
+    {
+	if (isInfoEnabled())
+	{
+	    DimDungeons.LOGGER.info(format, args);
+	}
+    }
+
     public static void logMessageWarn(String message)
     {
-	if (DungeonConfig.logLevel.equalsIgnoreCase("all") || DungeonConfig.logLevel.equalsIgnoreCase("info") || DungeonConfig.logLevel.equalsIgnoreCase("warn"))
+	if (isWarnEnabled())
 	{
 	    DimDungeons.LOGGER.warn(message);
 	}
     }
 
+    public static void logMessageWarn(Supplier<String> message)
+    {
+	if (isWarnEnabled())
+	{
+	    DimDungeons.LOGGER.warn(message.get());
+	}
+    }
+
+    public static void logMessageWarn(String format, Object... args)
+    {
+	if (isWarnEnabled())
+	{
+	    DimDungeons.LOGGER.warn(format, args);
+	}
+    }
+
     public static void logMessageError(String message)
     {
 	DimDungeons.LOGGER.error(message);
     }
+
+    public static boolean isGenerationEventsEnabled()
+    {
+	return DungeonConfig.logGenerationEvents;
+    }
+
+    // one line per event that a log pipeline can split on spaces and equals signs, like "event=room_placed room=basement x=512 y=50 z=-256 blocks=4096 ns=81234"
+    // keyValues alternates between a key and its value, and a value with a space in it has its spaces replaced so that the line still splits cleanly
+    public static void logGenerationEvent(String event, Object... keyValues)
+    {
+	if (!isGenerationEventsEnabled())
+	{
+	    return;
+	}
+
+	StringBuilder line = new StringBuilder("event=").append(event);
+	for (int i = 0; i + 1 < keyValues.length; i += 2)
+	{
+	    line.append(' ').append(keyValues[i]).append('=').append(String.valueOf(keyValues[i + 1]).replace(' ', '_'));
+	}
+	GENERATION_LOGGER.info(line.toString());
+    }
 }
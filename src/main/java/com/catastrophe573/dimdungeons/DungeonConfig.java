@@ -1,21 +1,14 @@
 package com.catastrophe573.dimdungeons;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
-import net.minecraft.block.Block;
-import net.minecraft.block.Blocks;
-import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.common.ForgeConfigSpec.ConfigValue;
 import net.minecraftforge.fml.ModList;
-import net.minecraftforge.registries.ForgeRegistries;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 // thank you gigaherz for showing me an example of a Forge config
 public class DungeonConfig
@@ -66,15 +59,27 @@ public class DungeonConfig
     public static boolean hardcoreMode = false;
     public static boolean enableDebugCheats = false;
     public static int portalCooldownTicks = 80;
+    public static int teleportWaitTicks = 40;
+    public static int enemyDespawnTicks = 2400;
+    public static boolean freezeEmptyDungeons = true;
+    public static int reclaimDungeonsAfterDays = 0;
+    public static boolean oneDungeonPerRegion = false;
+    public static int buildTickBudget = 10;
+    public static int dungeonPoolSize = 2;
+    public static int dungeonPoolTickBudget = 5;
+    public static boolean saveVoidChunks = false;
     public static int keyEnscriberDowngradeChanceFull = 100;
     public static int keyEnscriberDowngradeChanceUsed = 100;
     public static int keyEnscriberDowngradeChanceDamaged = 100;
     public static String logLevel = "error";
+    public static DimDungeons.LogLevel parsedLogLevel = DimDungeons.LogLevel.ERROR;
+    public static boolean logGenerationEvents = false;
     public static String worldborderToRespect = "error";
     public static int numberOfThemes = 1;
     public static int chanceForThemeKeys = DEFAULT_CHANCE_FOR_THEME_KEYS;
-    public static Set<Block> blockBreakWhitelist = Sets.newHashSet();
-    public static Set<Block> blockInteractBlacklist = Sets.newHashSet();
+    public static List<String> blockBreakWhitelist = Lists.newArrayList();
+    public static List<String> blockInteractBlacklist = Lists.newArrayList();
+    public static List<String> blockExplosionWhitelist = Lists.newArrayList();
 
     // client options
     public static boolean showParticles = true;
@@ -128,16 +133,27 @@ public class DungeonConfig
 	public final ForgeConfigSpec.BooleanValue hardcoreMode;
 	public final ForgeConfigSpec.BooleanValue enableDebugCheats;
 	public final ConfigValue<Integer> portalCooldownTicks;
+	public final ConfigValue<Integer> teleportWaitTicks;
+	public final ConfigValue<Integer> enemyDespawnTicks;
+	public final ForgeConfigSpec.BooleanValue freezeEmptyDungeons;
+	public final ConfigValue<Integer> reclaimDungeonsAfterDays;
+	public final ForgeConfigSpec.BooleanValue oneDungeonPerRegion;
+	public final ConfigValue<Integer> buildTickBudget;
+	public final ConfigValue<Integer> dungeonPoolSize;
+	public final ConfigValue<Integer> dungeonPoolTickBudget;
+	public final ForgeConfigSpec.BooleanValue saveVoidChunks;
 	public final ConfigValue<Integer> keyEnscriberDowngradeChanceFull;
 	public final ConfigValue<Integer> keyEnscriberDowngradeChanceUsed;
 	public final ConfigValue<Integer> keyEnscriberDowngradeChanceDamaged;
 	public final ConfigValue<String> logLevel;
+	public final ForgeConfigSpec.BooleanValue logGenerationEvents;
 	public final ConfigValue<String> worldborderToRespect;
 	public final ConfigValue<Integer> numberOfThemes;
 	public final ConfigValue<Integer> chanceForThemeKeys;
 
 	public final ForgeConfigSpec.ConfigValue<List<? extends String>> breakingWhitelist;
 	public final ForgeConfigSpec.ConfigValue<List<? extends String>> interactionBlacklist;
+	public final ForgeConfigSpec.ConfigValue<List<? extends String>> explosionWhitelist;
 
 	ServerConfig(ForgeConfigSpec.Builder builder)
 	{
@@ -173,55 +189,9 @@ public class DungeonConfig
 	    hardcodedDefaultInteractionBlacklist.add("minecraft:beehive");
 	    hardcodedDefaultInteractionBlacklist.add("minecraft:bee_nest");
 
-	    // or I could add support for mixing tags and block ids in the blacklist
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:black_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:blue_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:brown_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:cyan_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:gray_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:green_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:light_blue_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:light_gray_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:lime_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:magenta_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:orange_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:pink_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:purple_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:red_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:white_bed");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:yellow_bed");
-
-	    // also a good argument for tags
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:flower_pot");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_dandelion");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_poppy");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_blue_orchid");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_allium");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_azure_bluet");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_red_tulip");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_orange_tulip");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_white_tulip");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_pink_tulip");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_oxeye_daisy");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_cornflower");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_lily_of_the_valley");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_wither_rose");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_oak_sapling");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_spruce_sapling");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_birch_sapling");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_jungle_sapling");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_acacia_sapling");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_dark_oak_sapling");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_red_mushroom");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_brown_mushroom");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_fern");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_dead_bush");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_cactus");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_bamboo");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_crimson_fungus");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_warped_fungus");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_crimson_roots");
-	    hardcodedDefaultInteractionBlacklist.add("minecraft:potted_warped_roots");
+	    // tags and block ids can be mixed in all of these lists
+	    hardcodedDefaultInteractionBlacklist.add("#minecraft:beds");
+	    hardcodedDefaultInteractionBlacklist.add("#minecraft:flower_pots");
 
 	    // by default nothing should be breakable. but gravestone/death chest-type mods need this special exception
 	    List<String> hardcodedDefaultBreakingWhitelist = Lists.newArrayList();
@@ -237,6 +207,24 @@ public class DungeonConfig
 	    hardcoreMode = builder.comment("If set to TRUE then dungeon keys are consumed whenever a player enters a dungeon portal.").translation("config.dimdungeons.hardcoreMode").define("hardcoreMode", false);
 	    enableDebugCheats = builder.comment("If set to TRUE some cheats are available.").translation("config.dimdungeons.enableDebugCheats").define("enableDebugCheats", false);
 	    portalCooldownTicks = builder.comment("How many ticks the portal blocks cooldown for.").translation("config.dimdungeons.portalCooldownTicks").define("portalCooldownTicks", 80);
+	    teleportWaitTicks = builder.comment("The maximum number of ticks a teleport will wait for the chunks at its destination to finish loading. Set to 0 to always teleport immediately.")
+		    .translation("config.dimdungeons.teleportWaitTicks").define("teleportWaitTicks", 40);
+	    enemyDespawnTicks = builder.comment("Dungeon enemies are only spawned when a player walks into their room, and are put back to sleep after no player has been nearby for this many ticks. Set to 0 to spawn every enemy when the dungeon is built.")
+		    .translation("config.dimdungeons.enemyDespawnTicks").define("enemyDespawnTicks", 2400);
+	    freezeEmptyDungeons = builder.comment("If set to TRUE then the entities and ticking block entities of a dungeon stop updating while no player is inside that dungeon, even if its chunks are still loaded.")
+		    .translation("config.dimdungeons.freezeEmptyDungeons").define("freezeEmptyDungeons", true);
+	    reclaimDungeonsAfterDays = builder.comment("Dungeons that no player has been inside for this many days are deleted the next time the server starts, four neighboring dungeons at a time, so that the dungeon dimension doesn't grow forever. Keys to a deleted dungeon will say that the dungeon is gone. Does nothing in worlds with dungeons from versions that had no dungeon registry, because those dungeons can't be told apart from empty plots. Set to 0 to keep every dungeon forever.")
+		    .translation("config.dimdungeons.reclaimDungeonsAfterDays").define("reclaimDungeonsAfterDays", 0);
+	    oneDungeonPerRegion = builder.comment("If set to TRUE then new keys only lead to every other plot in each direction, so that every dungeon has a region file all to itself that can be backed up, reset, or reclaimed on its own. This leaves room for a quarter as many dungeons. Keys that were already made are not affected.")
+		    .translation("config.dimdungeons.oneDungeonPerRegion").define("oneDungeonPerRegion", false);
+	    buildTickBudget = builder.comment("The maximum number of milliseconds per server tick that may be spent building dungeons. Set to 0 to build each dungeon all at once.").translation("config.dimdungeons.buildTickBudget")
+		    .define("buildTickBudget", 10);
+	    dungeonPoolSize = builder.comment("How many dungeons of each type and theme to build ahead of time, while the server is idle, so that new keys lead to a finished dungeon. Set to 0 to disable.")
+		    .translation("config.dimdungeons.dungeonPoolSize").define("dungeonPoolSize", 2);
+	    dungeonPoolTickBudget = builder.comment("The maximum number of milliseconds per idle server tick that may be spent building dungeons ahead of time.").translation("config.dimdungeons.dungeonPoolTickBudget")
+		    .define("dungeonPoolTickBudget", 5);
+	    saveVoidChunks = builder.comment("If set to FALSE then chunks in the dungeon dimension that are nothing but empty void are never written to disk, since they are regenerated instantly.")
+		    .translation("config.dimdungeons.saveVoidChunks").define("saveVoidChunks", false);
 	    keyEnscriberDowngradeChanceFull = builder.comment("The odds of a Key Enscriber taking damage upon use, like an anvil, turning into a Used Key Enscriber. Range 0-100.").translation("config.dimdungeons.keyEnscriberDowngradeChanceFull")
 		    .define("keyEnscriberDowngradeChanceFull", 100);
 	    keyEnscriberDowngradeChanceUsed = builder.comment("The odds of a Used Key Enscriber taking damage upon use, like an anvil, turning into a Damaged Key Enscriber. Range 0-100.").translation("config.dimdungeons.keyEnscriberDowngradeChanceUsed")
@@ -244,16 +232,20 @@ public class DungeonConfig
 	    keyEnscriberDowngradeChanceDamaged = builder.comment("The odds of a Damaged Key Enscriber being destroyed upon use, like a damaged anvil. Range 0-100.").translation("config.dimdungeons.keyEnscriberDowngradeChanceDamaged")
 		    .define("keyEnscriberDowngradeChanceDamaged", 100);
 	    logLevel = builder.comment("Can be used to limit log spam. Can be set to 'all', 'warn', or 'error'.").translation("config.dimdungeons.logLevel").define("logLevel", "error");
+	    logGenerationEvents = builder.comment("If set to TRUE then every dungeon started, room placed, and dungeon finished is logged as one line of key=value pairs to the 'dimdungeons.generation' logger, no matter what logLevel is set to. Meant for log pipelines and profiling, not for reading.")
+		    .translation("config.dimdungeons.logGenerationEvents").define("logGenerationEvents", false);
 	    worldborderToRespect = builder.comment("Which dimension's worldborder to consider when activating keys. Using dimdungeons:dungeon_dimension may not work for everyone.").translation("config.dimdungeons.worldborderToRespect")
 		    .define("worldborderToRespect", "minecraft:overworld");
 	    numberOfThemes = builder.comment("The number of themes to expect in the common config.").translation("config.dimdungeons.numberOfThemes").define("numberOfThemes", DEFAULT_NUMBER_OF_THEMES);
 	    chanceForThemeKeys = builder.comment("The chance for an enemy in a basic dungeon to be carrying a theme key.").translation("config.dimdungeons.chanceForThemeKeys").define("chanceForThemeKeys", DEFAULT_CHANCE_FOR_THEME_KEYS);
 	    builder.pop();
 	    builder.comment("Options for block behavior in the dungeon dimension.").push("blocks");
-	    breakingWhitelist = builder.comment("List of blocks which any player should be allowed to break, defying the block protection. (For example, gravestones or death chests.) Default value is empty.")
+	    breakingWhitelist = builder.comment("List of blocks which any player should be allowed to break, defying the block protection. (For example, gravestones or death chests.) Block tags can be used by starting them with #. Default value is empty.")
 		    .translation("config.dimdungeons.breakingWhitelist").defineList("breakingWhitelist", hardcodedDefaultBreakingWhitelist, o -> o instanceof String);
-	    interactionBlacklist = builder.comment("List of blocks that players will be unable to interact with. It is strongly recommended to preserve the defaults.").translation("config.dimdungeons.interactionBlacklist")
+	    interactionBlacklist = builder.comment("List of blocks that players will be unable to interact with. Block tags can be used by starting them with #. It is strongly recommended to preserve the defaults.").translation("config.dimdungeons.interactionBlacklist")
 		    .defineList("interactionBlacklist", hardcodedDefaultInteractionBlacklist, o -> o instanceof String);
+	    explosionWhitelist = builder.comment("List of blocks which explosions are allowed to destroy. The default tag contains cracked stone bricks, trapped chests, and TNT.")
+		    .translation("config.dimdungeons.explosionWhitelist").defineList("explosionWhitelist", Lists.newArrayList("#dimdungeons:dimdungeons_explodable_blocks"), o -> o instanceof String);
 	    builder.pop();
 	}
     }
@@ -1138,15 +1130,27 @@ public class DungeonConfig
 	hardcoreMode = SERVER.hardcoreMode.get();
 	enableDebugCheats = SERVER.enableDebugCheats.get();
 	portalCooldownTicks = SERVER.portalCooldownTicks.get();
+	teleportWaitTicks = SERVER.teleportWaitTicks.get();
+	enemyDespawnTicks = SERVER.enemyDespawnTicks.get();
+	freezeEmptyDungeons = SERVER.freezeEmptyDungeons.get();
+	reclaimDungeonsAfterDays = SERVER.reclaimDungeonsAfterDays.get();
+	oneDungeonPerRegion = SERVER.oneDungeonPerRegion.get();
+	buildTickBudget = SERVER.buildTickBudget.get();
+	dungeonPoolSize = SERVER.dungeonPoolSize.get();
+	dungeonPoolTickBudget = SERVER.dungeonPoolTickBudget.get();
+	saveVoidChunks = SERVER.saveVoidChunks.get();
 	keyEnscriberDowngradeChanceFull = SERVER.keyEnscriberDowngradeChanceFull.get();
 	keyEnscriberDowngradeChanceUsed = SERVER.keyEnscriberDowngradeChanceUsed.get();
 	keyEnscriberDowngradeChanceDamaged = SERVER.keyEnscriberDowngradeChanceDamaged.get();
 	logLevel = SERVER.logLevel.get();
+	parsedLogLevel = DimDungeons.LogLevel.parse(logLevel);
+	logGenerationEvents = SERVER.logGenerationEvents.get();
 	worldborderToRespect = SERVER.worldborderToRespect.get();
 	chanceForThemeKeys = SERVER.chanceForThemeKeys.get();
 	numberOfThemes = SERVER.numberOfThemes.get();
-	blockBreakWhitelist = SERVER.breakingWhitelist.get().stream().map(DungeonConfig::parseBlock).collect(Collectors.toSet());
-	blockInteractBlacklist = SERVER.interactionBlacklist.get().stream().map(DungeonConfig::parseBlock).collect(Collectors.toSet());
+	blockBreakWhitelist = Lists.newArrayList(SERVER.breakingWhitelist.get());
+	blockInteractBlacklist = Lists.newArrayList(SERVER.interactionBlacklist.get());
+	blockExplosionWhitelist = Lists.newArrayList(SERVER.explosionWhitelist.get());
 
 	// this is also where the common config is refreshed
 	basicEntrances = COMMON.basicEntrances.get();
@@ -1190,19 +1194,6 @@ public class DungeonConfig
 	}
     }
 
-    // a helper function for translating ResourceLocation strings (such as minecraft:chest) into blocks
-    private static Block parseBlock(String location)
-    {
-	Block block = ForgeRegistries.BLOCKS.getValue(new ResourceLocation(location));
-	if (block == null)
-	{
-	    DimDungeons.logMessageWarn("dimdungeons: blacklist/whitelist could not find block " + location);
-	    return Blocks.VOID_AIR; // a block that will do nothing in either the whitelist or blacklist
-	}
-
-	return block;
-    }
-
     public static boolean isModInstalled(String namespace)
     {
 	return ModList.get().isLoaded(namespace);
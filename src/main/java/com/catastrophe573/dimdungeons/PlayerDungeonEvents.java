@@ -2,6 +2,10 @@ package com.catastrophe573.dimdungeons;
 
 import java.util.List;
 
+import com.catastrophe573.dimdungeons.dimension.DungeonChunkGenerator;
+import com.catastrophe573.dimdungeons.dimension.DungeonDormancyManager;
+import com.catastrophe573.dimdungeons.structure.DungeonSpawnManager;
+import com.catastrophe573.dimdungeons.utils.BlockProtectionPolicy;
 import com.catastrophe573.dimdungeons.utils.DungeonUtils;
 import com.google.common.collect.Lists;
 
@@ -13,21 +17,35 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.item.Items;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
 import net.minecraftforge.event.entity.living.EnderTeleportEvent;
+import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.living.LivingEntityUseItemEvent;
 import net.minecraftforge.event.entity.player.FillBucketEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickBlock;
 import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.event.world.ExplosionEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 
 public class PlayerDungeonEvents
 {
+
     //@SubscribeEvent
     //public void pickupItem(EntityItemPickupEvent event)
     //{
     //}
 
+    // the block lists may contain tags, which can change whenever datapacks are reloaded
+    @SubscribeEvent
+    public void tagsUpdated(TagsUpdatedEvent event)
+    {
+	BlockProtectionPolicy.rebuild(true);
+    }
+
     @SubscribeEvent
     public void explosionStart(ExplosionEvent.Start event)
     {
@@ -42,22 +60,14 @@ public class PlayerDungeonEvents
 	    return;
 	}
 
-	// allow only cracked stone bricks to be broken
+	// allow only cracked stone bricks (and the other blocks in the config) to be broken
 	List<BlockPos> crackedBricks = Lists.newArrayList();
 
-	for (int i = 0; i < event.getAffectedBlocks().size(); i++)
+	for (BlockPos pos : event.getAffectedBlocks())
 	{
-	    if (event.getWorld().getBlockState(event.getAffectedBlocks().get(i)).getBlock().getRegistryName().getPath().equals("cracked_stone_bricks"))
+	    if (BlockProtectionPolicy.canExplode(event.getWorld().getBlockState(pos)))
 	    {
-		crackedBricks.add(event.getAffectedBlocks().get(i));
-	    }
-	    if (event.getWorld().getBlockState(event.getAffectedBlocks().get(i)).getBlock().getRegistryName().getPath().equals("trapped_chest"))
-	    {
-		crackedBricks.add(event.getAffectedBlocks().get(i));
-	    }
-	    if (event.getWorld().getBlockState(event.getAffectedBlocks().get(i)).getBlock().getRegistryName().getPath().equals("tnt"))
-	    {
-		crackedBricks.add(event.getAffectedBlocks().get(i));
+		crackedBricks.add(pos);
 	    }
 	}
 
@@ -81,10 +91,9 @@ public class PlayerDungeonEvents
 	}
 
 	// check for a possible whitelist exception
-	BlockState targetBlock = event.getWorld().getBlockState(event.getPos());
-	if (DungeonConfig.blockBreakWhitelist.contains(targetBlock.getBlock()))
+	if (BlockProtectionPolicy.canBreak(event.getState()))
 	{
-	    //DimDungeons.LOGGER.info("dimdungeons: the WHITELIST ALLOWED to break: " + targetBlock.getBlock().getTranslatedName().getString());
+	    //DimDungeons.LOGGER.info("dimdungeons: the WHITELIST ALLOWED to break: " + event.getState().getBlock().getTranslatedName().getString());
 	    return;
 	}
 
@@ -149,7 +158,7 @@ public class PlayerDungeonEvents
 
 	// now the blacklist needs to be checked
 	BlockState targetBlock = event.getWorld().getBlockState(event.getPos());
-	if (DungeonConfig.blockInteractBlacklist.contains(targetBlock.getBlock()))
+	if (!BlockProtectionPolicy.canInteract(targetBlock))
 	{
 	    //DimDungeons.LOGGER.info("Entity " + event.getEntity().getName().getString() + " was BLACKLISTED from touching: " + targetBlock.getBlock().getTranslatedName().getString());
 	    event.setCanceled(true);
@@ -183,6 +192,52 @@ public class PlayerDungeonEvents
 	}
     }
 
+    @SubscribeEvent
+    public void livingDeath(LivingDeathEvent event)
+    {
+	if (event.getEntity().getCommandSenderWorld().isClientSide || !DungeonUtils.isDimensionDungeon(event.getEntity().getCommandSenderWorld()))
+	{
+	    return;
+	}
+
+	DungeonSpawnManager.onEnemyDied(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void entityJoinWorld(EntityJoinWorldEvent event)
+    {
+	if (event.getWorld().isClientSide || !DungeonUtils.isDimensionDungeon(event.getWorld()))
+	{
+	    return;
+	}
+
+	// enemies that were put back to sleep while their chunk was unloaded are thrown away when it loads again
+	if (DungeonSpawnManager.isOrphan(event.getEntity()))
+	{
+	    event.setCanceled(true);
+	    return;
+	}
+
+	DungeonDormancyManager.onEntityJoined(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void chunkLoad(ChunkEvent.Load event)
+    {
+	if (DungeonConfig.saveVoidChunks || event.getWorld() == null || event.getWorld().isClientSide() || !DungeonUtils.isDimensionDungeon((World) event.getWorld()))
+	{
+	    return;
+	}
+
+	// a freshly generated chunk of empty void doesn't need to be saved, it can just be generated again
+	// if anything ever changes inside the chunk then it will be marked as unsaved again and written to disk like normal
+	IChunk chunk = event.getChunk();
+	if (chunk instanceof Chunk && DungeonChunkGenerator.isVoidChunk(chunk.getPos().x, chunk.getPos().z))
+	{
+	    chunk.setUnsaved(false);
+	}
+    }
+
     @SubscribeEvent
     public void useItem(LivingEntityUseItemEvent.Start event)
     {
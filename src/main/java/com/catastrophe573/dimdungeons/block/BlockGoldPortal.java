@@ -9,7 +9,7 @@ import javax.annotation.Nullable;
 import com.catastrophe573.dimdungeons.DimDungeons;
 import com.catastrophe573.dimdungeons.DungeonConfig;
 import com.catastrophe573.dimdungeons.block.BlockPortalKeyhole;
-import com.catastrophe573.dimdungeons.dimension.CustomTeleporter;
+import com.catastrophe573.dimdungeons.dimension.TeleportScheduler;
 import com.catastrophe573.dimdungeons.item.ItemPortalKey;
 //import com.google.common.collect.Lists;
 //import com.mojang.datafixers.util.Pair;
@@ -178,24 +178,25 @@ public class BlockGoldPortal extends BreakableBlock
 		float warpX = destination.getX();
 		float warpY = destination.getY();
 		float warpZ = destination.getZ();
-		int cooldown = te.getCooldown();
+		PortalGroup group = te.getPortalGroup();
+		int cooldown = group.getCooldown();
 
-		// implement the cooldown on the portal block itself
+		// implement the cooldown on the whole doorway at once
 		int currentTick = worldIn.getServer().getTickCount();
-		if (!te.needsUpdateThisTick(currentTick))
+		if (!group.needsUpdateThisTick(currentTick))
 		{
 		    return;
 		}
 		if (cooldown > 0)
 		{
 		    //DimDungeons.LOGGER.info("PORTAL BLOCK COOLDOWN: " + cooldown);
-		    te.setCooldown(cooldown - 1, worldIn, pos, currentTick);
+		    group.setCooldown(cooldown - 1, currentTick);
 		    return;
 		}
 		else
 		{
 		    //DimDungeons.LOGGER.info("RESETTING COOLDOWN ON PORTAL");
-		    te.setCooldown(DungeonConfig.portalCooldownTicks, worldIn, pos, currentTick);
+		    group.setCooldown(DungeonConfig.portalCooldownTicks, currentTick);
 		}
 
 		if (!DungeonUtils.isDimensionDungeon(worldIn))
@@ -213,7 +214,7 @@ public class BlockGoldPortal extends BreakableBlock
 		    }
 
 		    // intentionally don't add 0.5f to the X, so the player is centered between the two blocks of the doorway
-		    DimDungeons.logMessageInfo("Player used a key to teleport to dungeon at (" + warpX + ", " + warpZ + ").");
+		    DimDungeons.logMessageInfo(() -> "Player used a key to teleport to dungeon at (" + warpX + ", " + warpZ + ").");
 		    actuallyPerformTeleport((ServerPlayerEntity) entityIn, DungeonUtils.getDungeonWorld(worldIn.getServer()), warpX, 55.1D, warpZ + 0.5f, 0);
 		}
 		else
@@ -258,9 +259,8 @@ public class BlockGoldPortal extends BreakableBlock
 	    destYaw = 180;
 	}
 
-	CustomTeleporter tele = new CustomTeleporter(dim);
-	tele.setDestPos(x, y, z, destYaw, destPitch);
-	player.changeDimension(dim, tele);
+	// the player actually moves once the chunks on the other side are loaded
+	TeleportScheduler.teleport(player, dim, x, y, z, destYaw, destPitch);
 	//player.teleport(dim, x, y, z, destYaw, destPitch);
 	return player;
     }
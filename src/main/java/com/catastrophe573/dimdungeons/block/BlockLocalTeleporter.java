@@ -3,7 +3,7 @@ package com.catastrophe573.dimdungeons.block;
 import javax.annotation.Nullable;
 
 import com.catastrophe573.dimdungeons.DimDungeons;
-import com.catastrophe573.dimdungeons.dimension.CustomTeleporter;
+import com.catastrophe573.dimdungeons.dimension.TeleportScheduler;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
@@ -108,9 +108,7 @@ public class BlockLocalTeleporter extends BreakableBlock
 
     protected Entity actuallyPerformTeleport(ServerPlayerEntity player, ServerWorld dim, double x, double y, double z, float destYaw, float destPitch)
     {
-	CustomTeleporter tele = new CustomTeleporter(dim);
-	tele.setDestPos(x, y, z, destYaw, destPitch);
-	player.changeDimension(dim, tele); // changing within the same dimension, but still teleport safely anyways
+	TeleportScheduler.teleport(player, dim, x, y, z, destYaw, destPitch); // changing within the same dimension, but still teleport safely anyways
 	//player.teleport(dim, x, y, z, destYaw, destPitch);
 	return player;
     }
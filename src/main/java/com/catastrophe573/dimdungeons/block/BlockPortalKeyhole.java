@@ -142,6 +142,7 @@ public class BlockPortalKeyhole extends Block
 		    // should we build the dungeon on the other side?
 		    boolean dungeonExistsHere = true;
 		    boolean anotherKeyWasFirst = false;
+		    boolean waitingForEntrance = false;
 
 		    if (playerItem.getItem() instanceof ItemPortalKey && !worldIn.isClientSide)
 		    {
@@ -151,17 +152,22 @@ public class BlockPortalKeyhole extends Block
 			if (shouldBuildDungeon(playerItem))
 			{
 			    //DimDungeons.LOGGER.info("BUILDING A NEW DUNGEON!");
-			    anotherKeyWasFirst = !DungeonUtils.buildDungeon(worldIn, genData);
+			    // the new dungeon is designed on another thread, so the exit door and the portal have to wait for its entrance room
+			    anotherKeyWasFirst = !DungeonUtils.buildDungeon(worldIn, genData, () -> openPortalToNewDungeon(worldIn, pos, genData));
 			    if (!anotherKeyWasFirst)
 			    {
 				playerItem.getTag().putBoolean(ItemPortalKey.NBT_BUILT, true);
+				waitingForEntrance = true;
 			    }
 			}
 
-			// regardless of if this is a new or old dungeon, reprogram the exit door
-			float entranceX = key.getWarpX(playerItem);
-			float entranceZ = key.getWarpZ(playerItem);
-			dungeonExistsHere = DungeonUtils.reprogramExistingExitDoorway(worldIn, (long) entranceX, (long) entranceZ, genData);
+			// otherwise reprogram the exit door of the old dungeon right away
+			if (!waitingForEntrance)
+			{
+			    float entranceX = key.getWarpX(playerItem);
+			    float entranceZ = key.getWarpZ(playerItem);
+			    dungeonExistsHere = DungeonUtils.reprogramExistingExitDoorway(worldIn, (long) entranceX, (long) entranceZ, genData);
+			}
 		    }
 
 		    myEntity.setContents(playerItem.copy());
@@ -173,13 +179,14 @@ public class BlockPortalKeyhole extends Block
 		    // should portal blocks be spawned?
 		    if (!worldIn.isClientSide)
 		    {
-			if (isOkayToSpawnPortalBlocks(worldIn, pos, state, myEntity) && dungeonExistsHere)
+			if (isOkayToSpawnPortalBlocks(worldIn, pos, state, myEntity) && dungeonExistsHere && !waitingForEntrance)
 			{
 			    Direction keyholeFacing = state.getValue(FACING);
 			    Direction.Axis axis = (keyholeFacing == Direction.NORTH || keyholeFacing == Direction.SOUTH) ? Direction.Axis.X : Direction.Axis.Z;
 
-			    addGoldenPortalBlock(worldIn, pos.below(), playerItem, axis);
-			    addGoldenPortalBlock(worldIn, pos.below(2), playerItem, axis);
+			    PortalGroup group = PortalGroup.create(worldIn, pos, DungeonConfig.portalCooldownTicks);
+			    addGoldenPortalBlock(worldIn, pos.below(), playerItem, axis, pos, group);
+			    addGoldenPortalBlock(worldIn, pos.below(2), playerItem, axis, pos, group);
 			}
 
 			// this function prints no message on success
@@ -217,7 +224,43 @@ public class BlockPortalKeyhole extends Block
 	return ActionResultType.PASS;
     }
 
-    protected void addGoldenPortalBlock(World worldIn, BlockPos pos, ItemStack keyStack, Direction.Axis axis)
+    // called on the server thread once the entrance room of a dungeon started by this keyhole has been placed
+    protected void openPortalToNewDungeon(World worldIn, BlockPos pos, DungeonGenData genData)
+    {
+	ItemPortalKey key = (ItemPortalKey) genData.keyItem.getItem();
+	long entranceX = (long) key.getWarpX(genData.keyItem);
+	long entranceZ = (long) key.getWarpZ(genData.keyItem);
+	if (!DungeonUtils.reprogramExistingExitDoorway(worldIn, entranceX, entranceZ, genData))
+	{
+	    return;
+	}
+
+	// the player might have taken the key back out, or broken the keyhole, while the dungeon was being designed
+	if (!worldIn.isLoaded(pos))
+	{
+	    return;
+	}
+	BlockState state = worldIn.getBlockState(pos);
+	TileEntity tileEntity = worldIn.getBlockEntity(pos);
+	if (state.getBlock() != this || !(tileEntity instanceof TileEntityPortalKeyhole))
+	{
+	    return;
+	}
+	TileEntityPortalKeyhole myEntity = (TileEntityPortalKeyhole) tileEntity;
+	ItemStack insideItem = myEntity.getObjectInserted();
+	if (isOkayToSpawnPortalBlocks(worldIn, pos, state, myEntity) && (long) key.getWarpX(insideItem) == entranceX && (long) key.getWarpZ(insideItem) == entranceZ)
+	{
+	    Direction keyholeFacing = state.getValue(FACING);
+	    Direction.Axis axis = (keyholeFacing == Direction.NORTH || keyholeFacing == Direction.SOUTH) ? Direction.Axis.X : Direction.Axis.Z;
+
+	    PortalGroup group = PortalGroup.create(worldIn, pos, DungeonConfig.portalCooldownTicks);
+	    addGoldenPortalBlock(worldIn, pos.below(), insideItem, axis, pos, group);
+	    addGoldenPortalBlock(worldIn, pos.below(2), insideItem, axis, pos, group);
+	}
+    }
+
+    // every block in the doorway shares the same group, which is named after the keyhole
+    protected void addGoldenPortalBlock(World worldIn, BlockPos pos, ItemStack keyStack, Direction.Axis axis, BlockPos keyholePos, PortalGroup group)
     {
 	worldIn.setBlockAndUpdate(pos, BlockRegistrar.block_gold_portal.defaultBlockState().setValue(BlockGoldPortal.AXIS, axis));
 	TileEntityGoldPortal te = (TileEntityGoldPortal) worldIn.getBlockEntity(pos);
@@ -228,6 +271,7 @@ public class BlockPortalKeyhole extends Block
 	    {
 		te.setDestination(key.getWarpX(keyStack), 55.1D, key.getWarpZ(keyStack), DungeonUtils.serializeDimensionKey(worldIn.dimension()));
 	    }
+	    te.setPortalGroup(keyholePos, group);
 	}
     }
 
@@ -0,0 +1,89 @@
+package com.catastrophe573.dimdungeons.block;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+// all of the gold portal blocks in one doorway share one of these, so that stepping into a portal never has to look at the neighboring blocks
+// each group is named after one block position (the keyhole, or the entrance of the dungeon for exit portals) which is saved on every portal block
+public class PortalGroup
+{
+    // only ever touched on the server thread
+    private static final Map<RegistryKey<World>, Map<Long, PortalGroup>> groups = Maps.newHashMap();
+
+    private int cooldown;
+    private int lastUpdate = 0;
+
+    // how many loaded portal blocks are using this group, so it can be forgotten once the doorway is broken or unloaded
+    private int members = 0;
+
+    private PortalGroup(int cooldown)
+    {
+	this.cooldown = cooldown;
+    }
+
+    // the first portal block to load decides the starting cooldown of its group, the same way it would have before groups existed
+    public static PortalGroup get(World worldIn, BlockPos anchor, int cooldown)
+    {
+	return groups.computeIfAbsent(worldIn.dimension(), k -> Maps.newHashMap()).computeIfAbsent(anchor.asLong(), k -> new PortalGroup(cooldown));
+    }
+
+    // called whenever a new set of portal blocks is spawned, so an old doorway in the same place doesn't pass along its cooldown
+    public static PortalGroup create(World worldIn, BlockPos anchor, int cooldown)
+    {
+	PortalGroup group = new PortalGroup(cooldown);
+	groups.computeIfAbsent(worldIn.dimension(), k -> Maps.newHashMap()).put(anchor.asLong(), group);
+	return group;
+    }
+
+    void join()
+    {
+	members++;
+    }
+
+    // called by a portal block that is being removed or unloaded, the last one out drops the group
+    static void release(World worldIn, BlockPos anchor, PortalGroup group)
+    {
+	if (--group.members > 0)
+	{
+	    return;
+	}
+
+	// a newer doorway may have replaced this group already, and that one is still in use
+	Map<Long, PortalGroup> dimGroups = groups.get(worldIn.dimension());
+	if (dimGroups != null && dimGroups.get(anchor.asLong()) == group)
+	{
+	    dimGroups.remove(anchor.asLong());
+	    if (dimGroups.isEmpty())
+	    {
+		groups.remove(worldIn.dimension());
+	    }
+	}
+    }
+
+    public int getCooldown()
+    {
+	return cooldown;
+    }
+
+    public boolean needsUpdateThisTick(int tick)
+    {
+	return tick > lastUpdate;
+    }
+
+    public void setCooldown(int value, int currentServerTick)
+    {
+	cooldown = value;
+	lastUpdate = currentServerTick;
+    }
+
+    // anything still loaded when the server stops is forgotten along with it, the cooldowns themselves are saved on the portal blocks
+    public static void clear()
+    {
+	groups.clear();
+    }
+}
@@ -23,9 +23,12 @@ public class TileEntityGoldPortal extends TileEntity
 
     private double destX = 0, destY = -10000, destZ = 0;
     private int cooldown = DungeonConfig.portalCooldownTicks;
-    private int lastUpdate = 0;
     private String destDimension = "minecraft:overworld";
 
+    // portals from before groups existed have no anchor, and are each their own group
+    private BlockPos groupAnchor = null;
+    private PortalGroup group = null;
+
     public TileEntityGoldPortal()
     {
 	super(TYPE);
@@ -40,6 +43,7 @@ public class TileEntityGoldPortal extends TileEntity
     public void load(BlockState stateIn, CompoundNBT compound)
     {
 	super.load(stateIn, compound);
+	releasePortalGroup();
 	if (compound.contains("destX") && compound.contains("destY") && compound.contains("destZ"))
 	{
 	    this.destX = compound.getDouble("destX");
@@ -60,6 +64,10 @@ public class TileEntityGoldPortal extends TileEntity
 	{
 	    this.destDimension = "minecraft:overworld";
 	}
+	if (compound.contains("portalGroup"))
+	{
+	    this.groupAnchor = BlockPos.of(compound.getLong("portalGroup"));
+	}
     }
 
     @Override
@@ -68,8 +76,12 @@ public class TileEntityGoldPortal extends TileEntity
 	compound.putDouble("destX", this.destX);
 	compound.putDouble("destY", this.destY);
 	compound.putDouble("destZ", this.destZ);
-	compound.putInt("cooldown", this.cooldown);
+	compound.putInt("cooldown", this.group != null ? this.group.getCooldown() : this.cooldown);
 	compound.putString("destDimension", this.destDimension);
+	if (this.groupAnchor != null)
+	{
+	    compound.putLong("portalGroup", this.groupAnchor.asLong());
+	}
 	return super.save(compound);
     }
 
@@ -86,59 +98,52 @@ public class TileEntityGoldPortal extends TileEntity
 	return new BlockPos(destX, destY, destZ);
     }
 
-    public int getCooldown()
+    public void setPortalGroup(BlockPos anchor, PortalGroup newGroup)
     {
-	return cooldown;
+	releasePortalGroup();
+	this.groupAnchor = anchor;
+	this.group = newGroup;
+	newGroup.join();
+	setChanged();
     }
 
-    public RegistryKey<World> getDestinationDimension()
+    public PortalGroup getPortalGroup()
     {
-	return RegistryKey.create(Registry.DIMENSION_REGISTRY, new ResourceLocation(destDimension));
+	if (group == null)
+	{
+	    group = PortalGroup.get(level, groupAnchor != null ? groupAnchor : worldPosition, cooldown);
+	    group.join();
+	}
+	return group;
     }
 
-    public boolean needsUpdateThisTick(int tick)
+    @Override
+    public void setRemoved()
     {
-	return tick > lastUpdate;
+	super.setRemoved();
+	releasePortalGroup();
     }
 
-    // return true if recursion is necessary
-    public boolean setCooldown(int value, World worldIn, BlockPos pos, int currentServerTick)
+    @Override
+    public void onChunkUnloaded()
     {
-	if (cooldown == value || currentServerTick <= lastUpdate)
-	{
-	    return false;
-	}
-
-	cooldown = value;
-	lastUpdate = currentServerTick;
+	super.onChunkUnloaded();
+	releasePortalGroup();
+    }
 
-	// search each neighboring block for siblings and update them too
-	int numBlocksUpdated = 0;
-	if (worldIn.getBlockEntity(pos.west()) instanceof TileEntityGoldPortal)
-	{
-	    numBlocksUpdated += ((TileEntityGoldPortal) worldIn.getBlockEntity(pos.west())).setCooldown(value, worldIn, pos.west(), currentServerTick) ? 1 : 0;
-	}
-	if (worldIn.getBlockEntity(pos.east()) instanceof TileEntityGoldPortal)
-	{
-	    numBlocksUpdated += ((TileEntityGoldPortal) worldIn.getBlockEntity(pos.east())).setCooldown(value, worldIn, pos.east(), currentServerTick) ? 1 : 0;
-	}
-	if (worldIn.getBlockEntity(pos.north()) instanceof TileEntityGoldPortal)
-	{
-	    numBlocksUpdated += ((TileEntityGoldPortal) worldIn.getBlockEntity(pos.north())).setCooldown(value, worldIn, pos.north(), currentServerTick) ? 1 : 0;
-	}
-	if (worldIn.getBlockEntity(pos.south()) instanceof TileEntityGoldPortal)
-	{
-	    numBlocksUpdated += ((TileEntityGoldPortal) worldIn.getBlockEntity(pos.south())).setCooldown(value, worldIn, pos.south(), currentServerTick) ? 1 : 0;
-	}
-	if (worldIn.getBlockEntity(pos.above()) instanceof TileEntityGoldPortal)
-	{
-	    numBlocksUpdated += ((TileEntityGoldPortal) worldIn.getBlockEntity(pos.above())).setCooldown(value, worldIn, pos.above(), currentServerTick) ? 1 : 0;
-	}
-	if (worldIn.getBlockEntity(pos.below()) instanceof TileEntityGoldPortal)
+    // keep the cooldown on this block so that it is still saved correctly after letting go of the group
+    private void releasePortalGroup()
+    {
+	if (group != null)
 	{
-	    numBlocksUpdated += ((TileEntityGoldPortal) worldIn.getBlockEntity(pos.below())).setCooldown(value, worldIn, pos.below(), currentServerTick) ? 1 : 0;
+	    cooldown = group.getCooldown();
+	    PortalGroup.release(level, groupAnchor != null ? groupAnchor : worldPosition, group);
+	    group = null;
 	}
+    }
 
-	return numBlocksUpdated > 0;
+    public RegistryKey<World> getDestinationDimension()
+    {
+	return RegistryKey.create(Registry.DIMENSION_REGISTRY, new ResourceLocation(destDimension));
     }
 }
@@ -1,6 +1,5 @@
 package com.catastrophe573.dimdungeons.dimension;
 
-import java.util.Random;
 import java.util.function.Function;
 
 import net.minecraft.block.PortalInfo;
@@ -8,24 +7,21 @@ import net.minecraft.entity.Entity;
 import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.world.server.ServerWorld;
 
+// this teleporter doesn't care which world it leads to, so the TeleportScheduler keeps one and reuses it for every trip
+// the destination is set right before each call to changeDimension(), which only ever happens on the server thread
 public class CustomTeleporter implements net.minecraftforge.common.util.ITeleporter
 {
-    protected final ServerWorld world;
-    protected final Random random;
-
-    protected Vector3d destPos;
+    protected double destX;
+    protected double destY;
+    protected double destZ;
     protected float destYaw;
     protected float destPitch;
 
-    public CustomTeleporter(ServerWorld worldIn)
-    {
-	this.world = worldIn;
-	this.random = new Random(worldIn.getSeed());
-    }
-
     public void setDestPos(double x, double y, double z, float yaw, float pitch)
     {
-	destPos = new Vector3d(x, y, z);
+	destX = x;
+	destY = y;
+	destZ = z;
 	destYaw = yaw;
 	destPitch = pitch;
     }
@@ -39,7 +35,8 @@ public class CustomTeleporter implements net.minecraftforge.common.util.ITelepor
     @Override
     public PortalInfo getPortalInfo(Entity entity, ServerWorld destWorld, Function<ServerWorld, PortalInfo> defaultPortalInfo)
     {
-	return new PortalInfo(destPos, Vector3d.ZERO, destYaw, destPitch);
+	// vanilla keeps the PortalInfo around while it moves the entity, so this is the one thing that has to be new every time
+	return new PortalInfo(new Vector3d(destX, destY, destZ), Vector3d.ZERO, destYaw, destPitch);
     }
 
     // no idea what this was ever used for in previous versions
@@ -9,12 +9,16 @@ import com.mojang.serialization.Codec;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.Blockreader;
 import net.minecraft.world.IBlockReader;
 import net.minecraft.world.IWorld;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.chunk.IChunk;
 import net.minecraft.world.gen.ChunkGenerator;
 import net.minecraft.world.gen.FlatChunkGenerator;
@@ -26,6 +30,7 @@ import net.minecraft.world.gen.feature.structure.StructureManager;
 import net.minecraft.world.server.ServerWorld;
 import net.minecraft.world.biome.BiomeManager;
 import net.minecraft.world.biome.provider.SingleBiomeProvider;
+import net.minecraftforge.common.util.Constants;
 
 public final class DungeonChunkGenerator extends ChunkGenerator
 {
@@ -150,61 +155,147 @@ public final class DungeonChunkGenerator extends ChunkGenerator
 	}));
     }
 
-    public void makeBase(IWorld worldIn, IChunk chunkIn)
+    // every chunk in this dimension is one of three columns repeated 256 times, so each one is built once and copied into whole ChunkSections
+    private static class ColumnFill
     {
-	// I still want a random seed, like the overworld, for use in structures
-	Random randomSeed = worldIn.getRandom();
+	private final BlockState[] column = new BlockState[256];
+	private final ListNBT[] sectionPalettes = new ListNBT[16];
+	private final long[][] sectionStates = new long[16][];
 
-	// 1.14 seed changing logic
-	int x = chunkIn.getPos().x;
-	int z = chunkIn.getPos().z;
-	randomSeed.setSeed((worldSeed + (long) (x * x * 4987142) + (long) (x * 5947611) + (long) (z * z) * 4392871L + (long) (z * 389711) ^ worldSeed));
+	// bedrock at y=1, then the given block up to y=49, then void
+	static ColumnFill floor(BlockState state)
+	{
+	    ColumnFill fill = new ColumnFill();
+	    fill.column[1] = Blocks.BEDROCK.defaultBlockState();
+	    Arrays.fill(fill.column, 2, 50, state);
+	    return fill.bake();
+	}
 
-	// first generate a superflat world - sandstone where dungeons can appear, and void otherwise
-	if (DungeonPlacementLogicBasic.isDungeonChunk(x, z) || DungeonPlacementLogicAdvanced.isDungeonChunk(x, z))
+	// the given block from y=1 to y=254
+	static ColumnFill wall(BlockState state)
+	{
+	    ColumnFill fill = new ColumnFill();
+	    Arrays.fill(fill.column, 1, 255, state);
+	    return fill.bake();
+	}
+
+	private ColumnFill bake()
 	{
-	    for (int px = 0; px < 16; px++)
+	    for (int i = 0; i < 16; i++)
 	    {
-		for (int py = 1; py < 255; py++)
+		ChunkSection scratch = null;
+		for (int y = 0; y < 16; y++)
 		{
-		    for (int pz = 0; pz < 16; pz++)
+		    BlockState state = column[(i << 4) + y];
+		    if (state != null)
 		    {
-			if (py < 2)
+			if (scratch == null)
 			{
-			    chunkIn.setBlockState(new BlockPos(px, py, pz), Blocks.BEDROCK.defaultBlockState(), false);
+			    scratch = new ChunkSection(i << 4);
 			}
-			else if (py < 50)
+			for (int x = 0; x < 16; x++)
 			{
-			    // for debugging mostly but it also kind of looks good when you're in creative mode
-			    if (DungeonPlacementLogicBasic.isEntranceChunk(x, z) || DungeonPlacementLogicAdvanced.isEntranceChunk(x, z))
-			    {
-				chunkIn.setBlockState(new BlockPos(px, py, pz), Blocks.BLACKSTONE.defaultBlockState(), false);
-			    }
-			    else
+			    for (int z = 0; z < 16; z++)
 			    {
-				chunkIn.setBlockState(new BlockPos(px, py, pz), Blocks.SANDSTONE.defaultBlockState(), false);
+				scratch.setBlockState(x, y, z, state, false);
 			    }
 			}
 		    }
 		}
+
+		// sections that stay empty are left null
+		if (scratch != null)
+		{
+		    CompoundNBT data = new CompoundNBT();
+		    scratch.getStates().write(data, "Palette", "BlockStates");
+		    sectionPalettes[i] = data.getList("Palette", Constants.NBT.TAG_COMPOUND);
+		    sectionStates[i] = data.getLongArray("BlockStates");
+		}
 	    }
+	    return this;
 	}
-	else
+
+	void copyInto(ChunkPrimer chunk)
 	{
-	    // add barrier blocks to the void in case the player escapes (although these are escapable, too)
-	    if (x % 16 == 0 || z % 16 == 0)
+	    for (int i = 0; i < 16; i++)
 	    {
-		for (int px = 0; px < 16; px++)
+		if (sectionStates[i] != null)
 		{
-		    for (int py = 1; py < 255; py++)
+		    ChunkSection section = chunk.getOrCreateSection(i);
+		    section.getStates().read(sectionPalettes[i], sectionStates[i]);
+		    section.recalcBlockCounts();
+		}
+	    }
+	    Heightmap.primeHeightmaps(chunk, chunk.getStatus().heightmapsAfter());
+	}
+
+	// the slow way, for anything that isn't a ChunkPrimer
+	void setBlocks(IChunk chunk)
+	{
+	    BlockPos.Mutable pos = new BlockPos.Mutable();
+	    for (int py = 0; py < 256; py++)
+	    {
+		if (column[py] != null)
+		{
+		    for (int px = 0; px < 16; px++)
 		    {
 			for (int pz = 0; pz < 16; pz++)
 			{
-			    chunkIn.setBlockState(new BlockPos(px, py, pz), Blocks.BARRIER.defaultBlockState(), false);
+			    chunk.setBlockState(pos.set(px, py, pz), column[py], false);
 			}
 		    }
 		}
 	    }
 	}
     }
-}
\ No newline at end of file
+
+    // a holder class so that these are built exactly once, even with several world generation threads
+    private static class ColumnFills
+    {
+	static final ColumnFill DUNGEON = ColumnFill.floor(Blocks.SANDSTONE.defaultBlockState());
+	static final ColumnFill ENTRANCE = ColumnFill.floor(Blocks.BLACKSTONE.defaultBlockState()); // for debugging mostly but it also kind of looks good when you're in creative mode
+	static final ColumnFill BARRIER = ColumnFill.wall(Blocks.BARRIER.defaultBlockState());
+    }
+
+    // chunks that are neither part of a dungeon plot nor a barrier wall are left completely empty
+    public static boolean isVoidChunk(int x, int z)
+    {
+	return !DungeonPlacementLogicBasic.isDungeonChunk(x, z) && !DungeonPlacementLogicAdvanced.isDungeonChunk(x, z) && x % 16 != 0 && z % 16 != 0;
+    }
+
+    public void makeBase(IWorld worldIn, IChunk chunkIn)
+    {
+	// I still want a random seed, like the overworld, for use in structures
+	Random randomSeed = worldIn.getRandom();
+
+	// 1.14 seed changing logic
+	int x = chunkIn.getPos().x;
+	int z = chunkIn.getPos().z;
+	randomSeed.setSeed((worldSeed + (long) (x * x * 4987142) + (long) (x * 5947611) + (long) (z * z) * 4392871L + (long) (z * 389711) ^ worldSeed));
+
+	// first generate a superflat world - sandstone where dungeons can appear, and void otherwise
+	ColumnFill fill = null;
+	if (DungeonPlacementLogicBasic.isDungeonChunk(x, z) || DungeonPlacementLogicAdvanced.isDungeonChunk(x, z))
+	{
+	    fill = DungeonPlacementLogicBasic.isEntranceChunk(x, z) || DungeonPlacementLogicAdvanced.isEntranceChunk(x, z) ? ColumnFills.ENTRANCE : ColumnFills.DUNGEON;
+	}
+	else if (x % 16 == 0 || z % 16 == 0)
+	{
+	    // add barrier blocks to the void in case the player escapes (although these are escapable, too)
+	    fill = ColumnFills.BARRIER;
+	}
+
+	if (fill == null)
+	{
+	    return;
+	}
+	if (chunkIn instanceof ChunkPrimer)
+	{
+	    fill.copyInto((ChunkPrimer) chunkIn);
+	}
+	else
+	{
+	    fill.setBlocks(chunkIn);
+	}
+    }
+}
@@ -0,0 +1,181 @@
+package com.catastrophe573.dimdungeons.dimension;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
+import com.catastrophe573.dimdungeons.utils.DungeonUtils;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.server.ServerWorld;
+
+// anything can load a dungeon's chunks again after it has been built (a player in the next plot over, a teleport ticket, a passing map)
+// and then its hoppers, mobs, and item entities all tick for nobody, so every plot without a player inside is frozen until someone arrives
+public class DungeonDormancyManager
+{
+    // which plot players are standing in doesn't change very quickly
+    private static final int CHECK_INTERVAL = 20;
+
+    // Forge saves canUpdate() with the entity, so everything frozen here is tagged in case it gets saved and loaded again as a brand new entity
+    public static final String FROZEN_TAG = DimDungeons.MOD_ID + "_frozen";
+
+    // plots with a player inside, keyed the same way as the DungeonRegistry
+    private static final Set<Long> activePlots = Sets.newHashSet();
+
+    // entities and ticking block entities that were frozen here, so that nothing frozen by another mod gets woken up by accident
+    private static final Set<Entity> frozenEntities = Sets.newIdentityHashSet();
+    private static final List<TileEntity> frozenBlockEntities = Lists.newArrayList();
+
+    // called at the end of every server tick
+    public static void tick(MinecraftServer server)
+    {
+	if (server.getTickCount() % CHECK_INTERVAL != 0)
+	{
+	    return;
+	}
+
+	ServerWorld world = DungeonUtils.getDungeonWorld(server);
+	activePlots.clear();
+	if (!DungeonConfig.freezeEmptyDungeons)
+	{
+	    thawAll(world);
+	    return;
+	}
+
+	for (ServerPlayerEntity player : world.players())
+	{
+	    activePlots.add(getPlotKey(player.blockPosition()));
+	}
+
+	freezeInactivePlots(world);
+	thawActivePlots(world);
+    }
+
+    // called when a player is about to arrive, so that the dungeon is already running when they get there
+    public static void activate(ServerWorld world, double x, double z)
+    {
+	activePlots.add(ChunkPos.asLong(DungeonPlots.getPlotX((long) Math.floor(x)), DungeonPlots.getPlotZ((long) Math.floor(z))));
+	thawActivePlots(world);
+    }
+
+    private static long getPlotKey(BlockPos pos)
+    {
+	return ChunkPos.asLong(DungeonPlots.getPlotX(pos.getX()), DungeonPlots.getPlotZ(pos.getZ()));
+    }
+
+    private static void freezeInactivePlots(ServerWorld world)
+    {
+	for (Entity entity : world.getAllEntities())
+	{
+	    if (!(entity instanceof PlayerEntity) && entity.canUpdate() && !activePlots.contains(getPlotKey(entity.blockPosition())))
+	    {
+		entity.canUpdate(false);
+		entity.getPersistentData().putBoolean(FROZEN_TAG, true);
+		frozenEntities.add(entity);
+	    }
+	}
+
+	// the world only ticks block entities that are in this list, and nothing else in the world cares whether they are in it
+	Iterator<TileEntity> it = world.tickableBlockEntities.iterator();
+	while (it.hasNext())
+	{
+	    TileEntity te = it.next();
+	    if (!activePlots.contains(getPlotKey(te.getBlockPos())))
+	    {
+		it.remove();
+		frozenBlockEntities.add(te);
+	    }
+	}
+    }
+
+    private static void thawActivePlots(ServerWorld world)
+    {
+	Iterator<Entity> entities = frozenEntities.iterator();
+	while (entities.hasNext())
+	{
+	    Entity entity = entities.next();
+	    if (entity.removed)
+	    {
+		entities.remove();
+	    }
+	    else if (activePlots.contains(getPlotKey(entity.blockPosition())))
+	    {
+		thaw(entity);
+		entities.remove();
+	    }
+	}
+
+	Iterator<TileEntity> blockEntities = frozenBlockEntities.iterator();
+	while (blockEntities.hasNext())
+	{
+	    TileEntity te = blockEntities.next();
+
+	    // a chunk that unloads and loads again gets brand new block entities, which are frozen separately
+	    if (te.isRemoved() || !world.isLoaded(te.getBlockPos()) || world.getBlockEntity(te.getBlockPos()) != te)
+	    {
+		blockEntities.remove();
+	    }
+	    else if (activePlots.contains(getPlotKey(te.getBlockPos())))
+	    {
+		world.tickableBlockEntities.add(te);
+		blockEntities.remove();
+	    }
+	}
+    }
+
+    private static void thawAll(ServerWorld world)
+    {
+	if (frozenEntities.isEmpty() && frozenBlockEntities.isEmpty())
+	{
+	    return;
+	}
+	for (Entity entity : frozenEntities)
+	{
+	    thaw(entity);
+	}
+	frozenEntities.clear();
+	for (TileEntity te : frozenBlockEntities)
+	{
+	    if (!te.isRemoved() && world.isLoaded(te.getBlockPos()) && world.getBlockEntity(te.getBlockPos()) == te)
+	    {
+		world.tickableBlockEntities.add(te);
+	    }
+	}
+	frozenBlockEntities.clear();
+    }
+
+    private static void thaw(Entity entity)
+    {
+	entity.canUpdate(true);
+	entity.getPersistentData().remove(FROZEN_TAG);
+    }
+
+    // an entity that was saved while it was frozen is loaded as a new object that was never in frozenEntities, so it is woken up here
+    // if its plot is still empty then the next check freezes it again, and if freezeEmptyDungeons was turned off since then it stays awake
+    public static void onEntityJoined(Entity entity)
+    {
+	if (entity.getPersistentData().contains(FROZEN_TAG))
+	{
+	    thaw(entity);
+	}
+    }
+
+    // anything frozen that gets saved is thawed by onEntityJoined() when it is loaded again, so forgetting it all is enough
+    public static void clear()
+    {
+	activePlots.clear();
+	frozenEntities.clear();
+	frozenBlockEntities.clear();
+    }
+}
@@ -0,0 +1,159 @@
+package com.catastrophe573.dimdungeons.dimension;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.utils.DungeonUtils;
+import com.google.common.collect.Maps;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.server.TicketType;
+
+// loading the chunks at the far end of a teleport stalls the whole server tick, so instead the chunks are requested as soon as a player steps into a portal
+// and the player is only moved once they have finished loading in the background, or once they have taken too long
+public class TeleportScheduler
+{
+    // the ticket outlives the wait a little, so the chunks are still there when the player arrives
+    private static final TicketType<ChunkPos> TELEPORT_TICKET = TicketType.create("dimdungeons_teleport", Comparator.comparingLong(ChunkPos::toLong), 300);
+
+    // how many chunks around the destination get loaded, the same as the vanilla nether portal ticket
+    private static final int TICKET_RADIUS = 3;
+
+    // see CustomTeleporter for why one instance is enough
+    private static final CustomTeleporter teleporter = new CustomTeleporter();
+
+    // only ever touched on the server thread, and a player can only be waiting on one teleport at a time
+    private static final Map<UUID, PendingTeleport> pending = Maps.newLinkedHashMap();
+
+    // how long players have been kept waiting, for /dimdungeons stats teleport
+    private static long immediateTeleports = 0;
+    private static long delayedTeleports = 0;
+    private static long timedOutTeleports = 0;
+    private static long totalWaitTicks = 0;
+    private static int longestWaitTicks = 0;
+
+    private static class PendingTeleport
+    {
+	final ServerPlayerEntity player;
+	final ServerWorld destWorld;
+	final double x, y, z;
+	final float yaw, pitch;
+	final int requestTick;
+
+	PendingTeleport(ServerPlayerEntity player, ServerWorld destWorld, double x, double y, double z, float yaw, float pitch, int requestTick)
+	{
+	    this.player = player;
+	    this.destWorld = destWorld;
+	    this.x = x;
+	    this.y = y;
+	    this.z = z;
+	    this.yaw = yaw;
+	    this.pitch = pitch;
+	    this.requestTick = requestTick;
+	}
+    }
+
+    public static void teleport(ServerPlayerEntity player, ServerWorld destWorld, double x, double y, double z, float yaw, float pitch)
+    {
+	// portals are touched every tick, so ignore any player that is already on their way
+	if (pending.containsKey(player.getUUID()))
+	{
+	    return;
+	}
+
+	if (DungeonConfig.teleportWaitTicks <= 0 || isLoaded(destWorld, x, z))
+	{
+	    immediateTeleports++;
+	    performTeleport(player, destWorld, x, y, z, yaw, pitch);
+	    return;
+	}
+
+	ChunkPos destChunk = new ChunkPos(MathHelper.floor(x) >> 4, MathHelper.floor(z) >> 4);
+	destWorld.getChunkSource().addRegionTicket(TELEPORT_TICKET, destChunk, TICKET_RADIUS, destChunk);
+	pending.put(player.getUUID(), new PendingTeleport(player, destWorld, x, y, z, yaw, pitch, destWorld.getServer().getTickCount()));
+    }
+
+    public static boolean isWaiting(ServerPlayerEntity player)
+    {
+	return pending.containsKey(player.getUUID());
+    }
+
+    // called at the end of every server tick
+    public static void tick(MinecraftServer server)
+    {
+	if (pending.isEmpty())
+	{
+	    return;
+	}
+
+	int currentTick = server.getTickCount();
+	Iterator<PendingTeleport> it = pending.values().iterator();
+	while (it.hasNext())
+	{
+	    PendingTeleport tp = it.next();
+
+	    // the player logged out or died while they were waiting
+	    if (tp.player.removed || tp.player.hasDisconnected())
+	    {
+		it.remove();
+		continue;
+	    }
+
+	    int waited = currentTick - tp.requestTick;
+	    boolean ready = isLoaded(tp.destWorld, tp.x, tp.z);
+	    if (!ready && waited < DungeonConfig.teleportWaitTicks)
+	    {
+		continue;
+	    }
+
+	    // if the chunks still aren't ready then teleport anyway, and let the server load them the slow way like it always did
+	    it.remove();
+	    ChunkPos destChunk = new ChunkPos(MathHelper.floor(tp.x) >> 4, MathHelper.floor(tp.z) >> 4);
+	    delayedTeleports++;
+	    timedOutTeleports += ready ? 0 : 1;
+	    totalWaitTicks += waited;
+	    longestWaitTicks = Math.max(longestWaitTicks, waited);
+	    performTeleport(tp.player, tp.destWorld, tp.x, tp.y, tp.z, tp.yaw, tp.pitch);
+
+	    // the arriving player keeps the chunks loaded from here on, so the ticket doesn't need to hold them for the rest of its lifespan
+	    tp.destWorld.getChunkSource().removeRegionTicket(TELEPORT_TICKET, destChunk, TICKET_RADIUS, destChunk);
+	}
+    }
+
+    private static boolean isLoaded(ServerWorld world, double x, double z)
+    {
+	return world.getChunkSource().getChunkNow(MathHelper.floor(x) >> 4, MathHelper.floor(z) >> 4) != null;
+    }
+
+    private static void performTeleport(ServerPlayerEntity player, ServerWorld destWorld, double x, double y, double z, float yaw, float pitch)
+    {
+	// wake the dungeon up before the player gets there, instead of up to a second after
+	if (DungeonUtils.isDimensionDungeon(destWorld))
+	{
+	    DungeonDormancyManager.activate(destWorld, x, z);
+	}
+
+	teleporter.setDestPos(x, y, z, yaw, pitch);
+	player.changeDimension(destWorld, teleporter); // this also works when changing within the same dimension
+    }
+
+    public static String getStatsSummary()
+    {
+	double averageWait = delayedTeleports > 0 ? (double) totalWaitTicks / delayedTeleports : 0;
+	return String.format("Teleports: %d immediate, %d waited for chunks (%d timed out), average wait %.1f ticks, longest wait %d ticks, %d waiting now", immediateTeleports, delayedTeleports,
+		timedOutTeleports, averageWait, longestWaitTicks, pending.size());
+    }
+
+    // a waiting player can't be resumed after a restart, they'll just have to step into the portal again
+    public static void clear()
+    {
+	pending.clear();
+    }
+}
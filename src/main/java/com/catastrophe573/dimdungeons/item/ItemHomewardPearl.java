@@ -1,10 +1,12 @@
 package com.catastrophe573.dimdungeons.item;
 
 import com.catastrophe573.dimdungeons.DimDungeons;
-import com.catastrophe573.dimdungeons.dimension.CustomTeleporter;
+import com.catastrophe573.dimdungeons.dimension.TeleportScheduler;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
 import com.catastrophe573.dimdungeons.utils.DungeonUtils;
 
 import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.ActionResult;
@@ -48,9 +50,7 @@ public class ItemHomewardPearl extends Item
 	double newx = getHomeX(playerIn.getX());
 	double newy = 55.1D;
 	double newz = getHomeZ(playerIn.getZ());
-	CustomTeleporter tele = new CustomTeleporter(serverWorld);
-	tele.setDestPos(newx, newy, newz, 180.0f, 0.0f);
-	playerIn.changeDimension(serverWorld, tele); // changing within the same dimension, but still teleport safely anyways
+	TeleportScheduler.teleport((ServerPlayerEntity) playerIn, serverWorld, newx, newy, newz, 180.0f, 0.0f); // changing within the same dimension, but still teleport safely anyways
 
 	// consume one pearl from the stack
 	itemstack.shrink(1);
@@ -62,16 +62,12 @@ public class ItemHomewardPearl extends Item
     public double getHomeX(double currentX)
     {
 	// figure out what the x/z of this key would be
-	double topLeftX = Math.floor(currentX / ItemPortalKey.BLOCKS_APART_PER_DUNGEON);
-
-	return topLeftX * ItemPortalKey.BLOCKS_APART_PER_DUNGEON + ItemPortalKey.ENTRANCE_OFFSET_X;
+	return DungeonPlots.getEntranceX(DungeonPlots.getPlotX((long) Math.floor(currentX)));
     }
 
     public double getHomeZ(double currentZ)
     {
 	// figure out what the x/z of this key would be
-	double topLeftZ = Math.floor(currentZ / ItemPortalKey.BLOCKS_APART_PER_DUNGEON);
-
-	return topLeftZ * ItemPortalKey.BLOCKS_APART_PER_DUNGEON + ItemPortalKey.ENTRANCE_OFFSET_Z;
+	return DungeonPlots.getEntranceZ(DungeonPlots.getPlotZ((long) Math.floor(currentZ)));
     }
 }
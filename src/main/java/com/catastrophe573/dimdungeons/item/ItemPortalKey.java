@@ -1,8 +1,13 @@
 package com.catastrophe573.dimdungeons.item;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
 import com.catastrophe573.dimdungeons.DimDungeons;
 import com.catastrophe573.dimdungeons.DungeonConfig;
 import com.catastrophe573.dimdungeons.block.BlockRegistrar;
+import com.catastrophe573.dimdungeons.structure.DungeonLayoutCache;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
+import com.catastrophe573.dimdungeons.utils.DungeonPool;
 import com.catastrophe573.dimdungeons.utils.DungeonUtils;
 
 import net.minecraft.block.BlockState;
@@ -84,18 +89,40 @@ public class ItemPortalKey extends Item
 
     // the only way to obtain a key with a theme is to find it already activated that way
     public void activateKeyLevel1(MinecraftServer server, ItemStack stack, int theme)
+    {
+	activateKeyLevel1(server, stack, theme, false);
+    }
+
+    // only keys activated by a player get a pre-built dungeon, keys made during generation mostly sit in chests and mobs and are never used
+    public void activateKeyLevel1(MinecraftServer server, ItemStack stack, int theme, boolean byPlayer)
     {
 	CompoundNBT data = new CompoundNBT();
 	data.putBoolean(NBT_KEY_ACTIVATED, true);
 	data.putBoolean(NBT_BUILT, false);
 	data.putInt(NBT_THEME, theme);
 
-	// where is this key going?
-	int generation_limit = DungeonUtils.getLimitOfWorldBorder(server);
-	int destX = random.nextInt(generation_limit);
-	int destZ = random.nextInt(generation_limit);
-	data.putInt(NBT_KEY_DESTINATION_X, destX);
-	data.putInt(NBT_KEY_DESTINATION_Z, destZ);
+	// where is this key going? a dungeon that was already built in the background is preferred
+	ImmutablePair<Integer, Integer> plot = byPlayer ? DungeonPool.takeReadyPlot(server, 1, theme) : null;
+	if (plot != null)
+	{
+	    data.putBoolean(NBT_BUILT, true);
+	    data.putInt(NBT_KEY_DESTINATION_X, plot.getLeft());
+	    data.putInt(NBT_KEY_DESTINATION_Z, plot.getRight());
+	}
+	else
+	{
+	    int generation_limit = DungeonUtils.getLimitOfWorldBorder(server);
+	    int destX = DungeonPlots.getRandomPlot(random, generation_limit);
+	    int destZ = DungeonPlots.getRandomPlot(random, generation_limit);
+	    data.putInt(NBT_KEY_DESTINATION_X, destX);
+	    data.putInt(NBT_KEY_DESTINATION_Z, destZ);
+
+	    // start designing the dungeon now, so that it's ready by the time the key is put in a keyhole
+	    if (byPlayer)
+	    {
+		DungeonLayoutCache.prefetch(DungeonUtils.getDungeonWorld(server).getSeed(), 1, destX, destZ, theme);
+	    }
+	}
 
 	// give it a funny random name
 	int nameType = random.nextInt(3);
@@ -120,18 +147,37 @@ public class ItemPortalKey extends Item
 
     // the only way to obtain level 2 keys is to find them already activated
     public void activateKeyLevel2(MinecraftServer server, ItemStack stack)
+    {
+	activateKeyLevel2(server, stack, false);
+    }
+
+    public void activateKeyLevel2(MinecraftServer server, ItemStack stack, boolean byPlayer)
     {
 	CompoundNBT data = new CompoundNBT();
 	data.putBoolean(NBT_KEY_ACTIVATED, true);
 	data.putBoolean(NBT_BUILT, false);
 	data.putInt(NBT_THEME, 0);
 
-	// where is this key going?
-	int generation_limit = DungeonUtils.getLimitOfWorldBorder(server);
-	int destX = random.nextInt(generation_limit);
-	int destZ = random.nextInt(generation_limit);
-	data.putInt(NBT_KEY_DESTINATION_X, destX);
-	data.putInt(NBT_KEY_DESTINATION_Z, destZ * -1);
+	// where is this key going? a dungeon that was already built in the background is preferred
+	ImmutablePair<Integer, Integer> plot = byPlayer ? DungeonPool.takeReadyPlot(server, 2, 0) : null;
+	if (plot != null)
+	{
+	    data.putBoolean(NBT_BUILT, true);
+	    data.putInt(NBT_KEY_DESTINATION_X, plot.getLeft());
+	    data.putInt(NBT_KEY_DESTINATION_Z, plot.getRight());
+	}
+	else
+	{
+	    int generation_limit = DungeonUtils.getLimitOfWorldBorder(server);
+	    int destX = DungeonPlots.getRandomPlot(random, generation_limit);
+	    int destZ = DungeonPlots.getRandomPlot(random, generation_limit);
+	    data.putInt(NBT_KEY_DESTINATION_X, destX);
+	    data.putInt(NBT_KEY_DESTINATION_Z, destZ * -1);
+	    if (byPlayer)
+	    {
+		DungeonLayoutCache.prefetch(DungeonUtils.getDungeonWorld(server).getSeed(), 2, destX, destZ * -1, 0);
+	    }
+	}
 
 	// give it a funny random name like "Key to the [LARGE] [PLACE]"
 	data.putInt(NBT_NAME_TYPE, 3);
@@ -143,11 +189,17 @@ public class ItemPortalKey extends Item
 
     // used by the /gendungeon cheat and nothing else
     public void forceCoordinates(ItemStack stack, int destX, int destZ)
+    {
+	forceCoordinates(stack, destX, destZ, 0);
+    }
+
+    // also used by the DungeonPool to build dungeons before any real key leads to them
+    public void forceCoordinates(ItemStack stack, int destX, int destZ, int theme)
     {
 	CompoundNBT data = new CompoundNBT();
 	data.putBoolean(NBT_KEY_ACTIVATED, true);
 	data.putBoolean(NBT_BUILT, false);
-	data.putInt(NBT_THEME, 0);
+	data.putInt(NBT_THEME, theme);
 
 	// where is this key going?
 	destX = destX < 0 || destX > RANDOM_COORDINATE_RANGE ? 0 : destX;
@@ -278,7 +330,7 @@ public class ItemPortalKey extends Item
 	    CompoundNBT itemData = stack.getTag();
 	    if (itemData != null && itemData.contains(NBT_KEY_DESTINATION_X))
 	    {
-		return (itemData.getInt(NBT_KEY_DESTINATION_X) * BLOCKS_APART_PER_DUNGEON) + ENTRANCE_OFFSET_X;
+		return DungeonPlots.getEntranceX(itemData.getInt(NBT_KEY_DESTINATION_X));
 	    }
 	}
 	return -1;
@@ -291,8 +343,7 @@ public class ItemPortalKey extends Item
 	    CompoundNBT itemData = stack.getTag();
 	    if (itemData != null && itemData.contains(NBT_KEY_DESTINATION_Z))
 	    {
-		float z = (itemData.getInt(NBT_KEY_DESTINATION_Z) * BLOCKS_APART_PER_DUNGEON) + ENTRANCE_OFFSET_Z;
-		return z;
+		return DungeonPlots.getEntranceZ(itemData.getInt(NBT_KEY_DESTINATION_Z));
 	    }
 	}
 	return -1;
@@ -305,7 +356,7 @@ public class ItemPortalKey extends Item
 	    CompoundNBT itemData = stack.getTag();
 	    if (itemData != null && itemData.contains(NBT_KEY_DESTINATION_X))
 	    {
-		return (itemData.getInt(NBT_KEY_DESTINATION_X) * BLOCKS_APART_PER_DUNGEON);
+		return DungeonPlots.getTopLeftX(itemData.getInt(NBT_KEY_DESTINATION_X));
 	    }
 	}
 	return -1;
@@ -318,7 +369,7 @@ public class ItemPortalKey extends Item
 	    CompoundNBT itemData = stack.getTag();
 	    if (itemData != null && itemData.contains(NBT_KEY_DESTINATION_Z))
 	    {
-		return (itemData.getInt(NBT_KEY_DESTINATION_Z) * BLOCKS_APART_PER_DUNGEON);
+		return DungeonPlots.getTopLeftZ(itemData.getInt(NBT_KEY_DESTINATION_Z));
 	    }
 	}
 	return -1;
@@ -524,11 +575,11 @@ public class ItemPortalKey extends Item
 	{
 	    if (pos.getX() == 0 && pos.getZ() == 0 && DungeonConfig.enableDebugCheats)
 	    {
-		activateKeyLevel2(worldIn.getServer(), itemstack); // for debugging only, End Portal Frames should never appear at (0,0) in the Overworld and this is not intended
+		activateKeyLevel2(worldIn.getServer(), itemstack, true); // for debugging only, End Portal Frames should never appear at (0,0) in the Overworld and this is not intended
 	    }
 	    else
 	    {
-		activateKeyLevel1(worldIn.getServer(), itemstack, 0);
+		activateKeyLevel1(worldIn.getServer(), itemstack, 0, true);
 	    }
 	}
 
@@ -1,8 +1,8 @@
 package com.catastrophe573.dimdungeons.item;
 
-import org.apache.commons.lang3.reflect.FieldUtils;
-
 import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
 import com.catastrophe573.dimdungeons.utils.DungeonUtils;
 
 import net.minecraft.block.BlockState;
@@ -283,6 +283,53 @@ public class ItemSecretBell extends Item //extends TieredItem implements IVanish
     //}
 
     private BlockPos findSecretChestNearby(BlockPos start, World worldIn)
+    {
+	// dungeons remember where their unopened containers are, so usually nothing needs to be searched at all
+	if (!worldIn.isClientSide && DungeonUtils.isDimensionDungeon(worldIn))
+	{
+	    DungeonRegistry registry = DungeonRegistry.get(worldIn.getServer());
+	    DungeonRegistry.DungeonRecord record = registry.getDungeon(DungeonPlots.getPlotX(start.getX()), DungeonPlots.getPlotZ(start.getZ()));
+	    if (record != null && record.lootIndexed)
+	    {
+		return findIndexedChestNearby(start, worldIn, registry, record);
+	    }
+	}
+
+	return searchForSecretChestNearby(start, worldIn);
+    }
+
+    // the same volume that searchForSecretChestNearby() covers, but only checking the containers that the dungeon knows about
+    private BlockPos findIndexedChestNearby(BlockPos start, World worldIn, DungeonRegistry registry, DungeonRegistry.DungeonRecord record)
+    {
+	int chunkX = start.getX() >> 4;
+	int chunkZ = start.getZ() >> 4;
+	int startY = start.getY() - 8;
+
+	for (int i = 0; i < record.lootContainers.size(); i++)
+	{
+	    BlockPos pos = record.lootContainers.get(i);
+	    if (pos.getX() >> 4 != chunkX || pos.getZ() >> 4 != chunkZ || pos.getY() < startY || pos.getY() >= startY + 16)
+	    {
+		continue;
+	    }
+
+	    // a container that was blown up, replaced, or emptied by a hopper no longer counts
+	    if (!hasLootTable(worldIn.getBlockEntity(pos)))
+	    {
+		registry.removeLootContainer(pos);
+		i--;
+		continue;
+	    }
+
+	    //DimDungeons.logMessageInfo("FOUND A SECRET " + pos.getX() + ", " + pos.getY() + ", " + pos.getZ());
+	    return pos;
+	}
+
+	return new BlockPos(-1, -10000, -1);
+    }
+
+    // used outside of the dungeon dimension, and in dungeons that were built before containers were remembered
+    private BlockPos searchForSecretChestNearby(BlockPos start, World worldIn)
     {
 	int startX = Math.floorDiv(start.getX(), 16) * 16;
 	int startZ = Math.floorDiv(start.getZ(), 16) * 16;
@@ -297,30 +344,10 @@ public class ItemSecretBell extends Item //extends TieredItem implements IVanish
 		for (int y = startY; y < startY + 16; y++)
 		{
 		    TileEntity te = worldIn.getBlockEntity(new BlockPos(x, y, z));
-		    if (te != null && te instanceof LockableLootTileEntity)
+		    if (hasLootTable(te))
 		    {
-			boolean hasLootTable = false;
-			try
-			{
-			    //hasLootTable = FieldUtils.readField(te, "lootTable", true) != null;
-			    hasLootTable = FieldUtils.readField(te, "lootTable", true) != null;
-			}
-			catch (IllegalAccessException e)
-			{
-			    // not a problem
-			    DimDungeons.logMessageError("Bell of Secrets FAILED - Illegal Access");
-			}
-			catch (IllegalArgumentException e)
-			{
-			    // not a problem
-			    DimDungeons.logMessageError("Bell of Secrets FAILED - Illegal Argument");
-			}
-
-			if (hasLootTable)
-			{
-			    //DimDungeons.logMessageInfo("FOUND A SECRET " + x + ", " + y + ", " + z);
-			    return new BlockPos(x, y, z);
-			}
+			//DimDungeons.logMessageInfo("FOUND A SECRET " + x + ", " + y + ", " + z);
+			return new BlockPos(x, y, z);
 		    }
 		}
 	    }
@@ -328,4 +355,10 @@ public class ItemSecretBell extends Item //extends TieredItem implements IVanish
 
 	return new BlockPos(-1, -10000, -1);
     }
+
+    // lootTable is made public by the access transformer, and it goes back to null once the loot has been rolled
+    private static boolean hasLootTable(TileEntity te)
+    {
+	return te instanceof LockableLootTileEntity && ((LockableLootTileEntity) te).lootTable != null;
+    }
 }
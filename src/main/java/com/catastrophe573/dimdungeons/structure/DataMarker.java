@@ -0,0 +1,50 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+// every kind of DATA structure block used by the rooms in this mod, so that they can be looked up once when a room is cached instead of every time it is placed
+public enum DataMarker
+{
+    RETURN_PORTAL("ReturnPortal"),
+    BACK_TO_ENTRANCE("BackToEntrance"),
+    LOCK_IT_STONE_BRICK("LockItStoneBrick"),
+    LOCK_IT("LockIt"),
+    FORTUNE_TELLER("FortuneTeller"),
+    CHEST_LOOT_1("ChestLoot1"),
+    CHEST_LOOT_2("ChestLoot2"),
+    CHEST_LOOT_LUCKY("ChestLootLucky"),
+    SET_TRAPPED_LOOT("SetTrappedLoot"),
+    BARREL_LOOT_1("BarrelLoot1"),
+    PLACE_L2_KEY("PlaceL2Key"),
+    SUMMON_WITCH("SummonWitch"),
+    SUMMON_WATER_ENEMY("SummonWaterEnemy"),
+    SUMMON_ENDERMAN("SummonEnderman"),
+    SUMMON_ENEMY_1("SummonEnemy1"),
+    SUMMON_ENEMY_2("SummonEnemy2"),
+    UNKNOWN("");
+
+    private static final Map<String, DataMarker> BY_NAME = Maps.newHashMap();
+
+    static
+    {
+	for (DataMarker marker : values())
+	{
+	    BY_NAME.put(marker.metadata, marker);
+	}
+    }
+
+    // the string typed into the structure block in game
+    public final String metadata;
+
+    DataMarker(String metadata)
+    {
+	this.metadata = metadata;
+    }
+
+    public static DataMarker fromName(String name)
+    {
+	return BY_NAME.getOrDefault(name, UNKNOWN);
+    }
+}
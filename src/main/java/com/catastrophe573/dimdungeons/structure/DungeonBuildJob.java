@@ -0,0 +1,77 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.ArrayDeque;
+
+// one dungeon that is waiting to be built, broken up into one step per room so it can be spread across several server ticks
+public class DungeonBuildJob
+{
+    public final long buildX;
+    public final long buildZ;
+
+    // for the dungeon_finished generation event, which covers every tick the dungeon was spread across
+    public final long createdNanos = System.nanoTime();
+
+    private final ArrayDeque<Runnable> rooms = new ArrayDeque<Runnable>();
+    private int roomsPlaced = 0;
+    private Runnable onFinished = null;
+
+    public DungeonBuildJob(long x, long z)
+    {
+	buildX = x;
+	buildZ = z;
+    }
+
+    // the entrance room always goes first, because the portal to this dungeon can't open until it exists
+    public void addEntranceRoom(Runnable step)
+    {
+	rooms.addFirst(step);
+    }
+
+    public void addRoom(Runnable step)
+    {
+	rooms.addLast(step);
+    }
+
+    // returns false if there was nothing left to place
+    public boolean placeNextRoom()
+    {
+	Runnable step = rooms.pollFirst();
+	if (step == null)
+	{
+	    return false;
+	}
+
+	step.run();
+	roomsPlaced++;
+	return true;
+    }
+
+    // called by the DungeonBuildScheduler once the last room has been placed
+    public void whenFinished(Runnable callback)
+    {
+	onFinished = callback;
+    }
+
+    public void finish()
+    {
+	if (onFinished != null)
+	{
+	    onFinished.run();
+	}
+    }
+
+    public boolean isFinished()
+    {
+	return rooms.isEmpty();
+    }
+
+    public int getRoomsPlaced()
+    {
+	return roomsPlaced;
+    }
+
+    public int getRoomsRemaining()
+    {
+	return rooms.size();
+    }
+}
@@ -0,0 +1,180 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.utils.DungeonPool;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
+import com.google.common.collect.Maps;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.ChunkPos;
+
+// placing 46 rooms in one tick causes a very noticeable lag spike, so instead rooms are placed a few at a time every server tick
+public class DungeonBuildScheduler
+{
+    private static final ArrayDeque<DungeonBuildJob> jobs = new ArrayDeque<DungeonBuildJob>();
+
+    // dungeons for the DungeonPool, which are only worked on when there is nothing more important to do
+    private static final ArrayDeque<DungeonBuildJob> backgroundJobs = new ArrayDeque<DungeonBuildJob>();
+
+    // dungeons that have already claimed their plot but are still being designed on a worker thread, and the plot each one claimed
+    private static final Map<CompletableFuture<DungeonBuildJob>, Long> pendingPlans = Maps.newHashMap();
+
+    public static void enqueue(DungeonBuildJob job)
+    {
+	// the entrance room (and the return portal inside it) is placed immediately so that the keyhole can open a portal right away
+	job.placeNextRoom();
+
+	// a budget of zero means the old behavior of building the entire dungeon at once
+	if (DungeonConfig.buildTickBudget <= 0)
+	{
+	    finishJob(job);
+	    return;
+	}
+
+	if (job.isFinished())
+	{
+	    job.finish();
+	}
+	else
+	{
+	    jobs.addLast(job);
+	}
+    }
+
+    // enqueues the dungeon on the server thread once it has been designed, which returns false if there was nothing to build
+    // the plan is remembered until then, because if the server stops first then finishAll() is the only chance to build it
+    public static CompletableFuture<Boolean> enqueueWhenPlanned(CompletableFuture<DungeonBuildJob> plan, MinecraftServer server, int plotX, int plotZ)
+    {
+	pendingPlans.put(plan, ChunkPos.asLong(plotX, plotZ));
+	return plan.thenApplyAsync(job ->
+	{
+	    // finishAll() already took care of it
+	    if (pendingPlans.remove(plan) == null)
+	    {
+		return job != null;
+	    }
+	    if (job == null)
+	    {
+		return false;
+	    }
+	    enqueue(job);
+	    return true;
+	}, server);
+    }
+
+    public static void enqueueBackground(DungeonBuildJob job)
+    {
+	backgroundJobs.addLast(job);
+    }
+
+    public static boolean isBusy()
+    {
+	return !jobs.isEmpty();
+    }
+
+    public static boolean isBackgroundBusy()
+    {
+	return !backgroundJobs.isEmpty();
+    }
+
+    // called at the end of every server tick
+    public static void tick(MinecraftServer server)
+    {
+	if (!jobs.isEmpty())
+	{
+	    work(jobs, DungeonConfig.buildTickBudget);
+	    return;
+	}
+
+	// only spend time on the pool if the server isn't already struggling to keep up
+	if (DungeonConfig.dungeonPoolSize < 1 || server.getAverageTickTime() + DungeonConfig.dungeonPoolTickBudget > 50.0f)
+	{
+	    return;
+	}
+
+	if (backgroundJobs.isEmpty())
+	{
+	    DungeonPool.startNextDungeon(server);
+	}
+	if (!backgroundJobs.isEmpty())
+	{
+	    work(backgroundJobs, DungeonConfig.dungeonPoolTickBudget);
+	}
+    }
+
+    private static void work(ArrayDeque<DungeonBuildJob> queue, int budget)
+    {
+	// always place at least one room per tick, even if the previous room went over budget
+	long deadline = System.nanoTime() + budget * 1000000L;
+	do
+	{
+	    DungeonBuildJob job = queue.peekFirst();
+	    if (!job.placeNextRoom() || job.isFinished())
+	    {
+		queue.pollFirst();
+		logFinished(job);
+		job.finish();
+	    }
+	}
+	while (!queue.isEmpty() && System.nanoTime() < deadline);
+    }
+
+    // a half built dungeon can't be resumed after a restart, so when the server stops everything in the queue is finished immediately
+    public static void finishAll(MinecraftServer server)
+    {
+	// the server won't run the rest of place() anymore, and a plot that was claimed but never built would leave its key pointing at nothing
+	for (Map.Entry<CompletableFuture<DungeonBuildJob>, Long> entry : pendingPlans.entrySet())
+	{
+	    DungeonBuildJob job = null;
+	    try
+	    {
+		job = entry.getKey().join();
+	    }
+	    catch (CompletionException | CancellationException e)
+	    {
+		DimDungeons.logMessageError("DIMDUNGEONS ERROR: unable to design a dungeon while the server was stopping. " + e.getMessage());
+	    }
+
+	    if (job != null)
+	    {
+		finishJob(job);
+	    }
+	    else
+	    {
+		DungeonRegistry.get(server).removeDungeon(ChunkPos.getX(entry.getValue()), ChunkPos.getZ(entry.getValue()));
+	    }
+	}
+	pendingPlans.clear();
+
+	while (!jobs.isEmpty())
+	{
+	    finishJob(jobs.pollFirst());
+	}
+	while (!backgroundJobs.isEmpty())
+	{
+	    finishJob(backgroundJobs.pollFirst());
+	}
+    }
+
+    private static void finishJob(DungeonBuildJob job)
+    {
+	while (job.placeNextRoom())
+	{
+	}
+	logFinished(job);
+	job.finish();
+    }
+
+    private static void logFinished(DungeonBuildJob job)
+    {
+	DimDungeons.logMessageInfo("DIMDUNGEONS FINISHED STRUCTURE at {}, {} ({} rooms)", job.buildX, job.buildZ, job.getRoomsPlaced());
+	DimDungeons.logGenerationEvent("dungeon_finished", "x", job.buildX, "z", job.buildZ, "rooms", job.getRoomsPlaced(), "ms", (System.nanoTime() - job.createdNanos) / 1000000L);
+    }
+}
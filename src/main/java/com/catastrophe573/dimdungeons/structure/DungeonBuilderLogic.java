@@ -8,7 +8,6 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import com.catastrophe573.dimdungeons.DungeonConfig;
 import com.google.common.collect.Lists;
 
-import net.minecraft.util.Direction;
 import net.minecraft.util.Rotation;
 
 // this class is used by the DungeonChunkGenerator to design dungeons
@@ -47,33 +46,78 @@ public class DungeonBuilderLogic
 
 	public boolean hasDoorNorth()
 	{
-	    return type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.CLOCKWISE_180) || (type == RoomType.THREEWAY && rotation != Rotation.NONE)
-		    || (type == RoomType.CORNER && rotation == Rotation.NONE) || (type == RoomType.CORNER && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.HALLWAY && rotation == Rotation.NONE)
-		    || (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.END && rotation == Rotation.CLOCKWISE_180);
+	    return (getDoorMask(type, rotation) & DOOR_NORTH) != 0;
 	}
 
 	public boolean hasDoorSouth()
 	{
-	    return type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.NONE) || (type == RoomType.THREEWAY && rotation != Rotation.CLOCKWISE_180)
-		    || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_90) || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.HALLWAY && rotation == Rotation.NONE)
-		    || (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.END && rotation == Rotation.NONE);
+	    return (getDoorMask(type, rotation) & DOOR_SOUTH) != 0;
 	}
 
 	public boolean hasDoorWest()
 	{
-	    return type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.CLOCKWISE_90) || (type == RoomType.THREEWAY && rotation != Rotation.COUNTERCLOCKWISE_90)
-		    || (type == RoomType.CORNER && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_90)
-		    || (type == RoomType.HALLWAY && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.END && rotation == Rotation.CLOCKWISE_90);
+	    return (getDoorMask(type, rotation) & DOOR_WEST) != 0;
 	}
 
 	public boolean hasDoorEast()
 	{
-	    return type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.THREEWAY && rotation != Rotation.CLOCKWISE_90)
-		    || (type == RoomType.CORNER && rotation == Rotation.NONE) || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_90) || (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_90)
-		    || (type == RoomType.HALLWAY && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.END && rotation == Rotation.COUNTERCLOCKWISE_90);
+	    return (getDoorMask(type, rotation) & DOOR_EAST) != 0;
 	}
     };
 
+    // each room type and rotation has a fixed set of doors, stored as four bits so that they can be looked up instead of worked out every time
+    static final int DOOR_NORTH = 1;
+    static final int DOOR_SOUTH = 2;
+    static final int DOOR_WEST = 4;
+    static final int DOOR_EAST = 8;
+    private static final int[][] DOOR_MASKS = new int[RoomType.values().length][Rotation.values().length];
+
+    static
+    {
+	for (RoomType type : RoomType.values())
+	{
+	    for (Rotation rotation : Rotation.values())
+	    {
+		DOOR_MASKS[type.ordinal()][rotation.ordinal()] = calculateDoorMask(type, rotation);
+	    }
+	}
+    }
+
+    static int getDoorMask(RoomType type, Rotation rotation)
+    {
+	return DOOR_MASKS[type.ordinal()][rotation.ordinal()];
+    }
+
+    private static int calculateDoorMask(RoomType type, Rotation rotation)
+    {
+	int mask = 0;
+	if (type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.CLOCKWISE_180) || (type == RoomType.THREEWAY && rotation != Rotation.NONE)
+		|| (type == RoomType.CORNER && rotation == Rotation.NONE) || (type == RoomType.CORNER && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.HALLWAY && rotation == Rotation.NONE)
+		|| (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.END && rotation == Rotation.CLOCKWISE_180))
+	{
+	    mask |= DOOR_NORTH;
+	}
+	if (type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.NONE) || (type == RoomType.THREEWAY && rotation != Rotation.CLOCKWISE_180)
+		|| (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_90) || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.HALLWAY && rotation == Rotation.NONE)
+		|| (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.END && rotation == Rotation.NONE))
+	{
+	    mask |= DOOR_SOUTH;
+	}
+	if (type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.CLOCKWISE_90) || (type == RoomType.THREEWAY && rotation != Rotation.COUNTERCLOCKWISE_90)
+		|| (type == RoomType.CORNER && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_180) || (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_90)
+		|| (type == RoomType.HALLWAY && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.END && rotation == Rotation.CLOCKWISE_90))
+	{
+	    mask |= DOOR_WEST;
+	}
+	if (type == RoomType.FOURWAY || type == RoomType.LARGE || type == RoomType.LARGE_DUMMY || (type == RoomType.ENTRANCE && rotation != Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.THREEWAY && rotation != Rotation.CLOCKWISE_90)
+		|| (type == RoomType.CORNER && rotation == Rotation.NONE) || (type == RoomType.CORNER && rotation == Rotation.CLOCKWISE_90) || (type == RoomType.HALLWAY && rotation == Rotation.CLOCKWISE_90)
+		|| (type == RoomType.HALLWAY && rotation == Rotation.COUNTERCLOCKWISE_90) || (type == RoomType.END && rotation == Rotation.COUNTERCLOCKWISE_90))
+	{
+	    mask |= DOOR_EAST;
+	}
+	return mask;
+    }
+
     // this is the final constructed dungeon
     public DungeonRoom finalLayout[][] = new DungeonRoom[8][8];
     public int enemyVariation1 = 0;
@@ -273,620 +317,443 @@ public class DungeonBuilderLogic
     // when this function is done you may read the dungeon layout from the public variable finalLayout
     public void calculateDungeonShape(int maxNumRooms, boolean useLarge)
     {
-	//System.out.println("START CALC DUNGEON SHAPE");
-
-	// step 1: place a constant entrance at the center of the bottom row
-	placeRoomShape(4, 7, entrance.get(entranceIndex), RoomType.ENTRANCE, Rotation.NONE);
-	entranceIndex++;
-	int numRoomsPlaced = 1;
+	long startNanos = GenerationProfiler.start();
+	new DungeonLayoutEngine(this).calculateDungeonShape(maxNumRooms, useLarge);
+	GenerationProfiler.record(GenerationProfiler.Phase.LAYOUT, startNanos);
+    }
 
-	// step 2: create three openings off of the entrance room
-	ArrayList<ImmutablePair<Integer, Integer>> openings = new ArrayList<ImmutablePair<Integer, Integer>>();
-	openings.add(new ImmutablePair<Integer, Integer>(3, 7));
-	openings.add(new ImmutablePair<Integer, Integer>(5, 7));
-	openings.add(new ImmutablePair<Integer, Integer>(4, 6));
+    // picks the room and rotation for an opening, given which neighbors already lead into it and which neighbors have a solid wall facing it
+    // the returned room is the default choice, and any bigger rooms that would also fit are added to roomPossibilities in the order they get shuffled in
+    static ImmutablePair<RoomType, Rotation> chooseRoomShape(boolean mustConnectNorth, boolean mustConnectSouth, boolean mustConnectWest, boolean mustConnectEast, boolean cantConnectNorth, boolean cantConnectSouth,
+	    boolean cantConnectWest, boolean cantConnectEast, boolean mustPickEndings, boolean noEndingsYet, ArrayList<ImmutablePair<RoomType, Rotation>> roomPossibilities)
+    {
+	RoomType nextType = RoomType.END;
+	Rotation nextRot = Rotation.NONE;
 
-	// step 3: if large rooms are enabled, place one somewhere, and put all those many doorways coming off it
-	if (useLarge)
+	// TODO: eliminate the redundant half of this IF statement by using mustPickEndings to abort the roomPossibilities[] check at the end
+	if (mustPickEndings)
 	{
-	    int largeX = rand.nextInt(7); // put the large room in any column, convention uses the top left corner, so use 0-6
-	    int largeZ = rand.nextInt(3) + 3; // start the large room on the 3rd, 4th, or 5th row
-
-	    placeRoomShape(largeX, largeZ, large.get(largeIndex), RoomType.LARGE, Rotation.NONE);
-	    numRoomsPlaced += 4;
-
-	    // for each of the 4 rooms in this large room, add openings for doorways as long as they don't lead out of bounds
-	    for (int xx = 0; xx < 2; xx++)
-	    {
-		for (int zz = 0; zz < 2; zz++)
-		{
-		    // calculate the coordinates of this quarter of the large room
-		    int roomX = largeX + xx;
-		    int roomZ = largeZ + zz;
-
-		    if (hasOpenDoor(roomX - 1, roomZ, Direction.EAST) && !finalLayout[roomX - 1][roomZ].hasRoom())
-		    {
-			openings.add(new ImmutablePair<Integer, Integer>(roomX - 1, roomZ));
-			//DimDungeons.LOGGER.info("Adding large opening " + (roomX-1) + ", " + roomZ);
-		    }
-		    if (hasOpenDoor(roomX + 1, roomZ, Direction.WEST) && !finalLayout[roomX + 1][roomZ].hasRoom())
-		    {
-			openings.add(new ImmutablePair<Integer, Integer>(roomX + 1, roomZ));
-			//DimDungeons.LOGGER.info("Adding large opening " + (roomX+1) + ", " + roomZ);
-		    }
-		    if (hasOpenDoor(roomX, roomZ - 1, Direction.SOUTH) && !finalLayout[roomX][roomZ - 1].hasRoom())
-		    {
-			openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ - 1));
-			//DimDungeons.LOGGER.info("Adding large opening " + roomX + ", " + (roomZ-1));
-		    }
-		    if (hasOpenDoor(roomX, roomZ + 1, Direction.NORTH) && !finalLayout[roomX][roomZ + 1].hasRoom())
-		    {
-			openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ + 1));
-			//DimDungeons.LOGGER.info("Adding large opening " + roomX + ", " + (roomZ+1));
-		    }
-		}
+	    // this case should be impossible
+	    if (mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.FOURWAY;
 	    }
-	}
 
-	// remaining rooms: for each opening, place a room that fits, and update openings, until no openings are left
-	shuffleArray(openings);
-	while (openings.size() > 0)
-	{
-	    ImmutablePair<Integer, Integer> roomPos = openings.remove(0);
-	    RoomType nextType = RoomType.END;
-	    Rotation nextRot = Rotation.NONE;
-
-	    boolean mustPickEndings = false;
-	    boolean noEndingsYet = false;
-	    //DimDungeons.LOGGER.info("Processing opening " + roomPos.left + ", " + roomPos.right);
-
-	    // it can happen that an "opening" is in the list twice due to loops, in which case skip this loop
-	    if (finalLayout[roomPos.left][roomPos.right].hasRoom())
+	    // forced threeway
+	    if (!mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
 	    {
-		continue;
+		nextType = RoomType.THREEWAY;
+	    }
+	    if (mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.THREEWAY;
+		nextRot = Rotation.CLOCKWISE_180;
+	    }
+	    if (mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.THREEWAY;
+		nextRot = Rotation.COUNTERCLOCKWISE_90;
+	    }
+	    if (mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.THREEWAY;
+		nextRot = Rotation.CLOCKWISE_90;
 	    }
 
-	    // if this room has neighbors already then it must connect to them
-	    boolean mustConnectNorth = hasOpenDoor(roomPos.left, roomPos.right, Direction.NORTH);
-	    boolean mustConnectSouth = hasOpenDoor(roomPos.left, roomPos.right, Direction.SOUTH);
-	    boolean mustConnectWest = hasOpenDoor(roomPos.left, roomPos.right, Direction.WEST);
-	    boolean mustConnectEast = hasOpenDoor(roomPos.left, roomPos.right, Direction.EAST);
-
-	    // likewise some walls must be acknowledged as mutual too
-	    boolean cantConnectNorth = hasSolidWall(roomPos.left, roomPos.right, Direction.NORTH);
-	    boolean cantConnectSouth = hasSolidWall(roomPos.left, roomPos.right, Direction.SOUTH);
-	    boolean cantConnectWest = hasSolidWall(roomPos.left, roomPos.right, Direction.WEST);
-	    boolean cantConnectEast = hasSolidWall(roomPos.left, roomPos.right, Direction.EAST);
+	    // forced corner
+	    if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+	    }
+	    if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+		nextRot = Rotation.CLOCKWISE_90;
+	    }
+	    if (!mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+		nextRot = Rotation.CLOCKWISE_180;
+	    }
+	    if (mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+		nextRot = Rotation.COUNTERCLOCKWISE_90;
+	    }
 
-	    // this puts the dungeon generation into "end it now" mode, where doors will no longer create more doors
-	    if (numRoomsPlaced + openings.size() >= maxNumRooms)
+	    // forced hallway is really rare but whatever lets code it for consistency
+	    if (mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
 	    {
-		mustPickEndings = true;
+		nextType = RoomType.HALLWAY;
 	    }
-	    // this keeps the randomizer from putting dead ends too early in a dungeon path
-	    else if (numRoomsPlaced + openings.size() < maxNumRooms / 2)
+	    if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
 	    {
-		noEndingsYet = true;
+		nextType = RoomType.HALLWAY;
+		nextRot = Rotation.CLOCKWISE_90;
 	    }
 
-	    // when mustPickEndings is false this is used to hold the list of valid possibilities
-	    ArrayList<ImmutablePair<RoomType, Rotation>> roomPossibilities = new ArrayList<ImmutablePair<RoomType, Rotation>>(0);
+	    // forced dead end is most common
+	    if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.END;
+		nextRot = Rotation.CLOCKWISE_180;
+	    }
+	    if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.END;
+	    }
+	    if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.END;
+		nextRot = Rotation.CLOCKWISE_90;
+	    }
+	    if (!mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.END;
+		nextRot = Rotation.COUNTERCLOCKWISE_90;
+	    }
+	}
+	else
+	{
+	    if (mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.FOURWAY;
+	    }
 
-	    // look at the neighboring doors and pick the room and rotation that connects them without making new openings
-	    // TODO: eliminate the redundant half of this IF statement by using mustPickEndings to abort the roomPossibilities[] check at the end
-	    if (mustPickEndings)
+	    // three doors are required, so place either a threeway or a fourway
+	    if (!mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
 	    {
-		// this case should be impossible
-		if (mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
+		nextType = RoomType.THREEWAY;
+		if (noEndingsYet && !cantConnectNorth)
 		{
 		    nextType = RoomType.FOURWAY;
 		}
-
-		// forced threeway
-		if (!mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
+	    }
+	    if (mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.THREEWAY;
+		nextRot = Rotation.CLOCKWISE_180;
+		if (noEndingsYet && !cantConnectSouth)
 		{
-		    nextType = RoomType.THREEWAY;
+		    nextType = RoomType.FOURWAY;
 		}
-		if (mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
+	    }
+	    if (mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.THREEWAY;
+		nextRot = Rotation.COUNTERCLOCKWISE_90;
+		if (noEndingsYet && !cantConnectWest)
 		{
-		    nextType = RoomType.THREEWAY;
-		    nextRot = Rotation.CLOCKWISE_180;
+		    nextType = RoomType.FOURWAY;
 		}
-		if (mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    }
+	    if (mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.THREEWAY;
+		nextRot = Rotation.CLOCKWISE_90;
+		if (noEndingsYet && !cantConnectEast)
 		{
-		    nextType = RoomType.THREEWAY;
-		    nextRot = Rotation.COUNTERCLOCKWISE_90;
+		    nextType = RoomType.FOURWAY;
 		}
-		if (mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    }
+
+	    // forced corner, other two walls may or may not be open
+	    if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+
+		// can we make this a 3way or 4way?
+		if (!cantConnectSouth && !cantConnectWest)
 		{
-		    nextType = RoomType.THREEWAY;
-		    nextRot = Rotation.CLOCKWISE_90;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
 		}
-
-		// forced corner
-		if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
+		if (!cantConnectSouth)
 		{
-		    nextType = RoomType.CORNER;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
 		}
-		if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
+		if (!cantConnectWest)
 		{
-		    nextType = RoomType.CORNER;
-		    nextRot = Rotation.CLOCKWISE_90;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
 		}
-		if (!mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    }
+	    if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+		nextRot = Rotation.CLOCKWISE_90;
+
+		// can we make this a 3way or 4way?
+		if (!cantConnectNorth && !cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectNorth)
 		{
-		    nextType = RoomType.CORNER;
-		    nextRot = Rotation.CLOCKWISE_180;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
 		}
-		if (mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
+		if (!cantConnectWest)
 		{
-		    nextType = RoomType.CORNER;
-		    nextRot = Rotation.COUNTERCLOCKWISE_90;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
 		}
+	    }
+	    if (!mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+		nextRot = Rotation.CLOCKWISE_180;
 
-		// forced hallway is really rare but whatever lets code it for consistency
-		if (mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
+		// can we make this a 3way or 4way?
+		if (!cantConnectNorth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectNorth)
 		{
-		    nextType = RoomType.HALLWAY;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
 		}
-		if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
+		if (!cantConnectEast)
 		{
-		    nextType = RoomType.HALLWAY;
-		    nextRot = Rotation.CLOCKWISE_90;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
 		}
+	    }
+	    if (mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.CORNER;
+		nextRot = Rotation.COUNTERCLOCKWISE_90;
 
-		// forced dead end is most common
-		if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && !mustConnectEast)
+		// can we make this a 3way or 4way?
+		if (!cantConnectSouth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectEast)
 		{
-		    nextType = RoomType.END;
-		    nextRot = Rotation.CLOCKWISE_180;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
 		}
-		if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
+	    }
+
+	    // forced hallway, but can we make it a 3way or 4way?
+	    if (mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
+	    {
+		nextType = RoomType.HALLWAY;
+
+		if (!cantConnectWest && !cantConnectEast)
 		{
-		    nextType = RoomType.END;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
 		}
-		if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
+		if (!cantConnectWest)
 		{
-		    nextType = RoomType.END;
-		    nextRot = Rotation.CLOCKWISE_90;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
 		}
-		if (!mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
+		if (!cantConnectEast)
 		{
-		    nextType = RoomType.END;
-		    nextRot = Rotation.COUNTERCLOCKWISE_90;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
 		}
 	    }
-	    else
+	    if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
 	    {
-		if (mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
+		nextType = RoomType.HALLWAY;
+		nextRot = Rotation.CLOCKWISE_90;
+
+		if (!cantConnectNorth && !cantConnectSouth)
 		{
-		    nextType = RoomType.FOURWAY;
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectNorth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
 		}
+		if (!cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
+		}
+	    }
 
-		// three doors are required, so place either a threeway or a fourway
-		if (!mustConnectNorth && mustConnectSouth && mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.THREEWAY;
-		    if (noEndingsYet && !cantConnectNorth)
-		    {
-			nextType = RoomType.FOURWAY;
-		    }
-		}
-		if (mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.THREEWAY;
-		    nextRot = Rotation.CLOCKWISE_180;
-		    if (noEndingsYet && !cantConnectSouth)
-		    {
-			nextType = RoomType.FOURWAY;
-		    }
-		}
-		if (mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.THREEWAY;
-		    nextRot = Rotation.COUNTERCLOCKWISE_90;
-		    if (noEndingsYet && !cantConnectWest)
-		    {
-			nextType = RoomType.FOURWAY;
-		    }
-		}
-		if (mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.THREEWAY;
-		    nextRot = Rotation.CLOCKWISE_90;
-		    if (noEndingsYet && !cantConnectEast)
-		    {
-			nextType = RoomType.FOURWAY;
-		    }
-		}
-
-		// forced corner, other two walls may or may not be open
-		if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.CORNER;
-
-		    // can we make this a 3way or 4way?
-		    if (!cantConnectSouth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		    if (!cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
-		    }
-		}
-		if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.CORNER;
-		    nextRot = Rotation.CLOCKWISE_90;
-
-		    // can we make this a 3way or 4way?
-		    if (!cantConnectNorth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectNorth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		    if (!cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
-		    }
-		}
-		if (!mustConnectNorth && mustConnectSouth && mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.CORNER;
-		    nextRot = Rotation.CLOCKWISE_180;
-
-		    // can we make this a 3way or 4way?
-		    if (!cantConnectNorth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectNorth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
-		    }
-		}
-		if (mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.CORNER;
-		    nextRot = Rotation.COUNTERCLOCKWISE_90;
-
-		    // can we make this a 3way or 4way?
-		    if (!cantConnectSouth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
-		    }
-		}
-
-		// forced hallway, but can we make it a 3way or 4way?
-		if (mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.HALLWAY;
-
-		    if (!cantConnectWest && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		}
-		if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.HALLWAY;
-		    nextRot = Rotation.CLOCKWISE_90;
-
-		    if (!cantConnectNorth && !cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectNorth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
-		    }
-		    if (!cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
-		    }
-		}
-
-		// one doorway is required, but can we add 2-4 more doorways here?
-		if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.END;
-		    nextRot = Rotation.CLOCKWISE_180;
-
-		    // try for 4ways, then 3ways
-		    if (!cantConnectSouth && !cantConnectWest && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectSouth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		    if (!cantConnectSouth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectWest && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
-		    }
-
-		    // try for 2ways too
-		    if (!cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.NONE));
-		    }
-		    if (!cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		}
-		if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.END;
-
-		    // try for 4ways, then 3ways
-		    if (!cantConnectNorth && !cantConnectWest && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectNorth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		    if (!cantConnectNorth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectWest && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
-		    }
-
-		    // try for 2ways too
-		    if (!cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectNorth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_180));
-		    }
-		}
-		if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
-		{
-		    nextType = RoomType.END;
-		    nextRot = Rotation.CLOCKWISE_90;
-
-		    // try for 4ways, then 3ways
-		    if (!cantConnectNorth && !cantConnectSouth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectNorth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
-		    }
-		    if (!cantConnectNorth && !cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectSouth && !cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
-		    }
-
-		    // try for 2ways too
-		    if (!cantConnectEast)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectNorth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		    if (!cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_180));
-		    }
-		}
-		if (!mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
-		{
-		    nextType = RoomType.END;
-		    nextRot = Rotation.COUNTERCLOCKWISE_90;
-
-		    // try for 4ways, then 3ways
-		    if (!cantConnectNorth && !cantConnectSouth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
-		    }
-		    if (!cantConnectNorth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
-		    }
-		    if (!cantConnectNorth && !cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
-		    }
-		    if (!cantConnectSouth && !cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
-		    }
-
-		    // try for 2ways too
-		    if (!cantConnectWest)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.CLOCKWISE_90));
-		    }
-		    if (!cantConnectNorth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.NONE));
-		    }
-		    if (!cantConnectSouth)
-		    {
-			roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_90));
-		    }
-		}
-	    }
-
-	    // if the previous block of code populated the roomPossibilities array then make a selection from it and use it instead
-	    // this code path represents more doorways being added and branching paths
-	    if (roomPossibilities.size() > 0 && !mustPickEndings)
-	    {
-		shuffleRoomPossibilities(roomPossibilities);
-		nextType = roomPossibilities.get(0).left;
-		nextRot = roomPossibilities.get(0).right;
-	    }
-
-	    // get the next random structure of this type and put it in there
-	    String nextRoom = "";
-	    if (nextType == RoomType.FOURWAY)
-	    {
-		nextRoom = fourway.get(fourwayIndex);
-		fourwayIndex = fourwayIndex == fourway.size() - 1 ? 0 : fourwayIndex + 1;
-	    }
-	    if (nextType == RoomType.THREEWAY)
-	    {
-		nextRoom = threeway.get(threewayIndex);
-		threewayIndex = threewayIndex == threeway.size() - 1 ? 0 : threewayIndex + 1;
-	    }
-	    if (nextType == RoomType.HALLWAY)
-	    {
-		nextRoom = hallway.get(hallwayIndex);
-		hallwayIndex = hallwayIndex == hallway.size() - 1 ? 0 : hallwayIndex + 1;
-	    }
-	    if (nextType == RoomType.CORNER)
-	    {
-		nextRoom = corner.get(cornerIndex);
-		cornerIndex = cornerIndex == corner.size() - 1 ? 0 : cornerIndex + 1;
-	    }
-	    if (nextType == RoomType.END)
-	    {
-		nextRoom = end.get(endIndex);
-		endIndex = endIndex == end.size() - 1 ? 0 : endIndex + 1;
-	    }
-
-	    // commit the room to the blueprint and open any potential new doors for the next loop to work with
-	    int roomX = roomPos.left;
-	    int roomZ = roomPos.right;
-	    placeRoomShape(roomX, roomZ, nextRoom, nextType, nextRot);
-	    numRoomsPlaced++;
-	    if (hasOpenDoor(roomX - 1, roomZ, Direction.EAST) && !finalLayout[roomX - 1][roomZ].hasRoom())
+	    // one doorway is required, but can we add 2-4 more doorways here?
+	    if (mustConnectNorth && !mustConnectSouth && !mustConnectWest && !mustConnectEast)
 	    {
-		openings.add(new ImmutablePair<Integer, Integer>(roomX - 1, roomZ));
-		//DimDungeons.LOGGER.info("Adding opening " + (roomX-1) + ", " + roomZ);
+		nextType = RoomType.END;
+		nextRot = Rotation.CLOCKWISE_180;
+
+		// try for 4ways, then 3ways
+		if (!cantConnectSouth && !cantConnectWest && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectSouth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
+		}
+		if (!cantConnectSouth && !cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectWest && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
+		}
+
+		// try for 2ways too
+		if (!cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.NONE));
+		}
+		if (!cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.NONE));
+		}
+		if (!cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.COUNTERCLOCKWISE_90));
+		}
 	    }
-	    if (hasOpenDoor(roomX + 1, roomZ, Direction.WEST) && !finalLayout[roomX + 1][roomZ].hasRoom())
+	    if (!mustConnectNorth && mustConnectSouth && !mustConnectWest && !mustConnectEast)
 	    {
-		openings.add(new ImmutablePair<Integer, Integer>(roomX + 1, roomZ));
-		//DimDungeons.LOGGER.info("Adding opening " + (roomX+1) + ", " + roomZ);
+		nextType = RoomType.END;
+
+		// try for 4ways, then 3ways
+		if (!cantConnectNorth && !cantConnectWest && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectNorth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
+		}
+		if (!cantConnectNorth && !cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectWest && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
+		}
+
+		// try for 2ways too
+		if (!cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectNorth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.NONE));
+		}
+		if (!cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_180));
+		}
 	    }
-	    if (hasOpenDoor(roomX, roomZ - 1, Direction.SOUTH) && !finalLayout[roomX][roomZ - 1].hasRoom())
+	    if (!mustConnectNorth && !mustConnectSouth && mustConnectWest && !mustConnectEast)
 	    {
-		openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ - 1));
-		//DimDungeons.LOGGER.info("Adding opening " + roomX + ", " + (roomZ-1));
+		nextType = RoomType.END;
+		nextRot = Rotation.CLOCKWISE_90;
+
+		// try for 4ways, then 3ways
+		if (!cantConnectNorth && !cantConnectSouth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectNorth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
+		}
+		if (!cantConnectNorth && !cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectSouth && !cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
+		}
+
+		// try for 2ways too
+		if (!cantConnectEast)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectNorth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.COUNTERCLOCKWISE_90));
+		}
+		if (!cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_180));
+		}
 	    }
-	    if (hasOpenDoor(roomX, roomZ + 1, Direction.NORTH) && !finalLayout[roomX][roomZ + 1].hasRoom())
+	    if (!mustConnectNorth && !mustConnectSouth && !mustConnectWest && mustConnectEast)
 	    {
-		openings.add(new ImmutablePair<Integer, Integer>(roomX, roomZ + 1));
-		//DimDungeons.LOGGER.info("Adding opening " + roomX + ", " + (roomZ+1));
-	    }
+		nextType = RoomType.END;
+		nextRot = Rotation.COUNTERCLOCKWISE_90;
 
-	    // next loop - reshuffle the openings because we may have added some
-	    shuffleArray(openings);
-	    //DimDungeons.LOGGER.info("Num openings: " + openings.size());
-	}
-
-	//System.out.println("END CALC DUNGEON SHAPE");
-    }
+		// try for 4ways, then 3ways
+		if (!cantConnectNorth && !cantConnectSouth && !cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.FOURWAY, Rotation.NONE));
+		}
+		if (!cantConnectNorth && !cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.CLOCKWISE_180));
+		}
+		if (!cantConnectNorth && !cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.COUNTERCLOCKWISE_90));
+		}
+		if (!cantConnectSouth && !cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.THREEWAY, Rotation.NONE));
+		}
 
-    // returns true if another chunk has a door leading into this chunk from the specified direction
-    // safe to call with x or y that are out of bounds
-    private boolean hasOpenDoor(int x, int z, Direction direction)
-    {
-	if (x < 0 || z < 0 || x > 7 || z > 7)
-	{
-	    return false;
-	}
-	if (direction == Direction.NORTH && z > 0)
-	{
-	    return finalLayout[x][z - 1].hasDoorSouth();
-	}
-	if (direction == Direction.SOUTH && z < 7)
-	{
-	    return finalLayout[x][z + 1].hasDoorNorth();
-	}
-	if (direction == Direction.WEST && x > 0)
-	{
-	    return finalLayout[x - 1][z].hasDoorEast();
-	}
-	if (direction == Direction.EAST && x < 7)
-	{
-	    return finalLayout[x + 1][z].hasDoorWest();
+		// try for 2ways too
+		if (!cantConnectWest)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.HALLWAY, Rotation.CLOCKWISE_90));
+		}
+		if (!cantConnectNorth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.NONE));
+		}
+		if (!cantConnectSouth)
+		{
+		    roomPossibilities.add(new ImmutablePair<RoomType, Rotation>(RoomType.CORNER, Rotation.CLOCKWISE_90));
+		}
+	    }
 	}
-	return false;
+
+	return new ImmutablePair<RoomType, Rotation>(nextType, nextRot);
     }
 
-    // returns true if the neighbor in this direction has placed a solid wall, and false if there is a door or no neighbor yet at all
-    // safe to call with x or y that are out of bounds
-    private boolean hasSolidWall(int x, int z, Direction direction)
+    // cycles through the shuffled candidates of each room type, so that no room repeats until every candidate has been used
+    String nextStructure(RoomType type)
     {
-	if (x < 0 || z < 0 || x > 7 || z > 7)
+	String nextRoom = "";
+	if (type == RoomType.FOURWAY)
 	{
-	    return true;
+	    nextRoom = fourway.get(fourwayIndex);
+	    fourwayIndex = fourwayIndex == fourway.size() - 1 ? 0 : fourwayIndex + 1;
 	}
-	if (direction == Direction.NORTH && z > 0)
+	if (type == RoomType.THREEWAY)
 	{
-	    return !finalLayout[x][z - 1].hasDoorSouth() && finalLayout[x][z - 1].hasRoom();
+	    nextRoom = threeway.get(threewayIndex);
+	    threewayIndex = threewayIndex == threeway.size() - 1 ? 0 : threewayIndex + 1;
 	}
-	if (direction == Direction.SOUTH && z < 7)
+	if (type == RoomType.HALLWAY)
 	{
-	    return !finalLayout[x][z + 1].hasDoorNorth() && finalLayout[x][z + 1].hasRoom();
+	    nextRoom = hallway.get(hallwayIndex);
+	    hallwayIndex = hallwayIndex == hallway.size() - 1 ? 0 : hallwayIndex + 1;
 	}
-	if (direction == Direction.WEST && x > 0)
+	if (type == RoomType.CORNER)
 	{
-	    return !finalLayout[x - 1][z].hasDoorEast() && finalLayout[x - 1][z].hasRoom();
+	    nextRoom = corner.get(cornerIndex);
+	    cornerIndex = cornerIndex == corner.size() - 1 ? 0 : cornerIndex + 1;
 	}
-	if (direction == Direction.EAST && x < 7)
+	if (type == RoomType.END)
 	{
-	    return !finalLayout[x + 1][z].hasDoorWest() && finalLayout[x + 1][z].hasRoom();
+	    nextRoom = end.get(endIndex);
+	    endIndex = endIndex == end.size() - 1 ? 0 : endIndex + 1;
 	}
-	return true;
+	return nextRoom;
     }
 
     public void placeRoomShape(int x, int z, String room, RoomType type, Rotation rot)
@@ -925,29 +792,4 @@ public class DungeonBuilderLogic
 	    array.set(i, temp);
 	}
     }
-
-    private void shuffleArray(ArrayList<ImmutablePair<Integer, Integer>> array)
-    {
-	for (int i = array.size() - 1; i > 0; i--)
-	{
-	    int index = rand.nextInt(i + 1);
-
-	    ImmutablePair<Integer, Integer> temp = array.get(index);
-	    array.set(index, array.get(i));
-	    array.set(i, temp);
-	}
-    }
-
-    private void shuffleRoomPossibilities(ArrayList<ImmutablePair<RoomType, Rotation>> array)
-    {
-	for (int i = array.size() - 1; i > 0; i--)
-	{
-	    int index = rand.nextInt(i + 1);
-
-	    // Simple swap
-	    ImmutablePair<RoomType, Rotation> temp = array.get(index);
-	    array.set(index, array.get(i));
-	    array.set(i, temp);
-	}
-    }
 }
@@ -0,0 +1,129 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
+
+import net.minecraft.util.Util;
+
+// every dungeon layout is designed from a seed made out of the world seed and the key's dest_x, dest_z, and theme
+// so the same key always leads to the same dungeon, and a layout can be designed long before it is needed, on any thread
+public class DungeonLayoutCache
+{
+    // a layout is about 64 small objects, so this is far less memory than the room templates
+    private static final int MAX_LAYOUTS = 64;
+
+    // keyed by layout seed, with the least recently used layout thrown away first
+    private static final Map<Long, CompletableFuture<DungeonBuilderLogic>> layouts = new LinkedHashMap<Long, CompletableFuture<DungeonBuilderLogic>>(MAX_LAYOUTS, 0.75f, true)
+    {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<DungeonBuilderLogic>> eldest)
+	{
+	    return size() > MAX_LAYOUTS;
+	}
+    };
+
+    // this is the same mixing that vanilla uses to give each large structure its own seed, with the dungeon type and theme added in
+    public static long getLayoutSeed(long worldSeed, int plotX, int plotZ, DungeonType type, int theme)
+    {
+	Random mixer = new Random(worldSeed);
+	long a = mixer.nextLong() | 1L;
+	long b = mixer.nextLong() | 1L;
+	return ((long) plotX * a) ^ ((long) plotZ * b) ^ worldSeed ^ ((type.ordinal() * 256L + theme) * 0x9E3779B97F4A7C15L);
+    }
+
+    public static int getDungeonSize(DungeonType type, int theme)
+    {
+	if (type == DungeonType.ADVANCED)
+	{
+	    return DungeonConfig.DEFAULT_ADVANCED_DUNGEON_SIZE;
+	}
+	if (theme > 0 && theme <= DungeonConfig.themeSettings.size())
+	{
+	    return DungeonConfig.themeSettings.get(theme - 1).themeDungeonSize;
+	}
+	return DungeonConfig.DEFAULT_BASIC_DUNGEON_SIZE;
+    }
+
+    // returns the finished layout, designing it right now on this thread if nobody has started it yet
+    public static DungeonBuilderLogic getLayout(long worldSeed, int plotX, int plotZ, DungeonType type, int theme)
+    {
+	return getOrStart(getLayoutSeed(worldSeed, plotX, plotZ, type, theme), plotX, plotZ, type, theme, Runnable::run).join();
+    }
+
+    // designs the layout on a worker thread so that it's already waiting in the cache when the key is used
+    public static CompletableFuture<DungeonBuilderLogic> getLayoutAsync(long worldSeed, int plotX, int plotZ, DungeonType type, int theme)
+    {
+	return getOrStart(getLayoutSeed(worldSeed, plotX, plotZ, type, theme), plotX, plotZ, type, theme, Util.backgroundExecutor());
+    }
+
+    // the same thing for code outside this package, which knows the key level instead of the dungeon type
+    public static void prefetch(long worldSeed, int keyLevel, int plotX, int plotZ, int theme)
+    {
+	getLayoutAsync(worldSeed, plotX, plotZ, keyLevel == 2 ? DungeonType.ADVANCED : DungeonType.BASIC, theme);
+    }
+
+    private static CompletableFuture<DungeonBuilderLogic> getOrStart(long seed, int plotX, int plotZ, DungeonType type, int theme, Executor executor)
+    {
+	CompletableFuture<DungeonBuilderLogic> layout;
+	synchronized (layouts)
+	{
+	    layout = layouts.get(seed);
+	    if (layout != null)
+	    {
+		return layout;
+	    }
+	    layout = new CompletableFuture<DungeonBuilderLogic>();
+	    layouts.put(seed, layout);
+	}
+
+	// the design happens outside of the lock, since a direct executor would otherwise hold it the whole time
+	CompletableFuture<DungeonBuilderLogic> result = layout;
+	executor.execute(() ->
+	{
+	    try
+	    {
+		result.complete(design(seed, plotX, plotZ, type, theme));
+	    }
+	    catch (RuntimeException e)
+	    {
+		DimDungeons.logMessageError("DIMDUNGEONS ERROR: unable to design the dungeon layout for (" + plotX + ", " + plotZ + "): " + e);
+
+		// don't keep a broken layout around, a config reload might fix whatever went wrong
+		synchronized (layouts)
+		{
+		    layouts.remove(seed, result);
+		}
+		result.completeExceptionally(e);
+	    }
+	});
+	return result;
+    }
+
+    private static DungeonBuilderLogic design(long seed, int plotX, int plotZ, DungeonType type, int theme)
+    {
+	// the entrance is always in the same chunk of the plot, see ItemPortalKey.getWarpX()
+	long entranceChunkX = plotX * 16L + 8;
+	long entranceChunkZ = plotZ * 16L + 11;
+	DungeonBuilderLogic dbl = new DungeonBuilderLogic(new Random(seed), entranceChunkX, entranceChunkZ, type, theme);
+	dbl.calculateDungeonShape(getDungeonSize(type, theme), type == DungeonType.ADVANCED);
+	return dbl;
+    }
+
+    // layouts contain room names, so they are thrown away whenever the room lists might have changed
+    public static void clear()
+    {
+	synchronized (layouts)
+	{
+	    layouts.clear();
+	}
+    }
+}
@@ -0,0 +1,308 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.ArrayList;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.RoomType;
+
+import net.minecraft.util.Rotation;
+
+// does the same job as the original ArrayList based layout code (now DungeonLayoutReference in src/jmh), but keeps the 8x8 grid as door bitmasks and the openings as a plain int queue
+// it makes exactly the same calls to the Random in exactly the same order, so the same seed still produces the same dungeon
+class DungeonLayoutEngine
+{
+    private static final RoomType[] ROOM_TYPES = RoomType.values();
+    private static final Rotation[] ROTATIONS = Rotation.values();
+
+    // chooseRoomShape() only depends on these ten booleans, so its answers are worked out once for all 1024 combinations
+    // a shape is packed as (type ordinal << 2) | rotation ordinal
+    private static final int MUST_PICK_ENDINGS = 256;
+    private static final int NO_ENDINGS_YET = 512;
+    private static final int[] DEFAULT_SHAPE = new int[1024];
+    private static final int[][] OPTIONAL_SHAPES = new int[1024][];
+    private static int mostOptionalShapes = 0;
+
+    static
+    {
+	for (int i = 0; i < 1024; i++)
+	{
+	    ArrayList<ImmutablePair<RoomType, Rotation>> possibilities = new ArrayList<ImmutablePair<RoomType, Rotation>>();
+	    ImmutablePair<RoomType, Rotation> shape = DungeonBuilderLogic.chooseRoomShape((i & DungeonBuilderLogic.DOOR_NORTH) != 0, (i & DungeonBuilderLogic.DOOR_SOUTH) != 0, (i & DungeonBuilderLogic.DOOR_WEST) != 0,
+		    (i & DungeonBuilderLogic.DOOR_EAST) != 0, ((i >> 4) & DungeonBuilderLogic.DOOR_NORTH) != 0, ((i >> 4) & DungeonBuilderLogic.DOOR_SOUTH) != 0, ((i >> 4) & DungeonBuilderLogic.DOOR_WEST) != 0,
+		    ((i >> 4) & DungeonBuilderLogic.DOOR_EAST) != 0, (i & MUST_PICK_ENDINGS) != 0, (i & NO_ENDINGS_YET) != 0, possibilities);
+
+	    DEFAULT_SHAPE[i] = packShape(shape.left, shape.right);
+	    OPTIONAL_SHAPES[i] = new int[possibilities.size()];
+	    for (int j = 0; j < possibilities.size(); j++)
+	    {
+		OPTIONAL_SHAPES[i][j] = packShape(possibilities.get(j).left, possibilities.get(j).right);
+	    }
+	    mostOptionalShapes = Math.max(mostOptionalShapes, possibilities.size());
+	}
+    }
+
+    private final DungeonBuilderLogic dbl;
+
+    // one door mask per chunk, indexed by (x << 3) | z, where zero means there is no room there yet since every room has at least one door
+    private final int[] doors = new int[64];
+
+    // an opening can be added once for each of its four neighbors, so the queue never needs to hold more than this
+    private final int[] openings = new int[4 * 64 + 16];
+    private int openingsHead = 0;
+    private int openingsTail = 0;
+
+    private final int[] shuffledShapes = new int[mostOptionalShapes];
+
+    DungeonLayoutEngine(DungeonBuilderLogic dbl)
+    {
+	this.dbl = dbl;
+    }
+
+    private static int packShape(RoomType type, Rotation rotation)
+    {
+	return (type.ordinal() << 2) | rotation.ordinal();
+    }
+
+    private static int cell(int x, int z)
+    {
+	return (x << 3) | z;
+    }
+
+    public void calculateDungeonShape(int maxNumRooms, boolean useLarge)
+    {
+	// step 1: place a constant entrance at the center of the bottom row
+	placeRoomShape(4, 7, dbl.entrance.get(dbl.entranceIndex), RoomType.ENTRANCE, Rotation.NONE);
+	dbl.entranceIndex++;
+	int numRoomsPlaced = 1;
+
+	// step 2: create three openings off of the entrance room
+	addOpening(3, 7);
+	addOpening(5, 7);
+	addOpening(4, 6);
+
+	// step 3: if large rooms are enabled, place one somewhere, and put all those many doorways coming off it
+	if (useLarge)
+	{
+	    int largeX = dbl.rand.nextInt(7);
+	    int largeZ = dbl.rand.nextInt(3) + 3;
+
+	    placeRoomShape(largeX, largeZ, dbl.large.get(dbl.largeIndex), RoomType.LARGE, Rotation.NONE);
+	    numRoomsPlaced += 4;
+
+	    for (int xx = 0; xx < 2; xx++)
+	    {
+		for (int zz = 0; zz < 2; zz++)
+		{
+		    addOpeningsAround(largeX + xx, largeZ + zz);
+		}
+	    }
+	}
+
+	// remaining rooms: for each opening, place a room that fits, and update openings, until no openings are left
+	shuffleOpenings();
+	while (openingsHead < openingsTail)
+	{
+	    int roomCell = openings[openingsHead++];
+	    int roomX = roomCell >> 3;
+	    int roomZ = roomCell & 7;
+
+	    // it can happen that an "opening" is in the queue twice due to loops
+	    if (doors[roomCell] != 0)
+	    {
+		continue;
+	    }
+
+	    int mustConnect = 0;
+	    int cantConnect = 0;
+	    if (hasOpenDoor(roomX, roomZ, DungeonBuilderLogic.DOOR_NORTH))
+	    {
+		mustConnect |= DungeonBuilderLogic.DOOR_NORTH;
+	    }
+	    if (hasOpenDoor(roomX, roomZ, DungeonBuilderLogic.DOOR_SOUTH))
+	    {
+		mustConnect |= DungeonBuilderLogic.DOOR_SOUTH;
+	    }
+	    if (hasOpenDoor(roomX, roomZ, DungeonBuilderLogic.DOOR_WEST))
+	    {
+		mustConnect |= DungeonBuilderLogic.DOOR_WEST;
+	    }
+	    if (hasOpenDoor(roomX, roomZ, DungeonBuilderLogic.DOOR_EAST))
+	    {
+		mustConnect |= DungeonBuilderLogic.DOOR_EAST;
+	    }
+	    if (hasSolidWall(roomX, roomZ, DungeonBuilderLogic.DOOR_NORTH))
+	    {
+		cantConnect |= DungeonBuilderLogic.DOOR_NORTH;
+	    }
+	    if (hasSolidWall(roomX, roomZ, DungeonBuilderLogic.DOOR_SOUTH))
+	    {
+		cantConnect |= DungeonBuilderLogic.DOOR_SOUTH;
+	    }
+	    if (hasSolidWall(roomX, roomZ, DungeonBuilderLogic.DOOR_WEST))
+	    {
+		cantConnect |= DungeonBuilderLogic.DOOR_WEST;
+	    }
+	    if (hasSolidWall(roomX, roomZ, DungeonBuilderLogic.DOOR_EAST))
+	    {
+		cantConnect |= DungeonBuilderLogic.DOOR_EAST;
+	    }
+
+	    int remainingOpenings = openingsTail - openingsHead;
+	    int choice = mustConnect | (cantConnect << 4);
+	    boolean mustPickEndings = numRoomsPlaced + remainingOpenings >= maxNumRooms;
+	    if (mustPickEndings)
+	    {
+		choice |= MUST_PICK_ENDINGS;
+	    }
+	    else if (numRoomsPlaced + remainingOpenings < maxNumRooms / 2)
+	    {
+		choice |= NO_ENDINGS_YET;
+	    }
+
+	    // same as DungeonLayoutReference.shuffleRoomPossibilities(), but on a reused int array
+	    int shape = DEFAULT_SHAPE[choice];
+	    int[] options = OPTIONAL_SHAPES[choice];
+	    if (options.length > 0 && !mustPickEndings)
+	    {
+		System.arraycopy(options, 0, shuffledShapes, 0, options.length);
+		for (int i = options.length - 1; i > 0; i--)
+		{
+		    int index = dbl.rand.nextInt(i + 1);
+		    int temp = shuffledShapes[index];
+		    shuffledShapes[index] = shuffledShapes[i];
+		    shuffledShapes[i] = temp;
+		}
+		shape = shuffledShapes[0];
+	    }
+
+	    RoomType nextType = ROOM_TYPES[shape >> 2];
+	    Rotation nextRot = ROTATIONS[shape & 3];
+	    placeRoomShape(roomX, roomZ, dbl.nextStructure(nextType), nextType, nextRot);
+	    numRoomsPlaced++;
+	    addOpeningsAround(roomX, roomZ);
+
+	    // next loop - reshuffle the openings because we may have added some
+	    shuffleOpenings();
+	}
+    }
+
+    private void placeRoomShape(int x, int z, String room, RoomType type, Rotation rot)
+    {
+	dbl.placeRoomShape(x, z, room, type, rot);
+	doors[cell(x, z)] = DungeonBuilderLogic.getDoorMask(type, rot);
+	if (type == RoomType.LARGE)
+	{
+	    int dummyDoors = DungeonBuilderLogic.getDoorMask(RoomType.LARGE_DUMMY, rot);
+	    doors[cell(x + 1, z)] = dummyDoors;
+	    doors[cell(x, z + 1)] = dummyDoors;
+	    doors[cell(x + 1, z + 1)] = dummyDoors;
+	}
+    }
+
+    private void addOpening(int x, int z)
+    {
+	openings[openingsTail++] = cell(x, z);
+    }
+
+    // the same order as the original, which matters because it changes what the shuffle does
+    private void addOpeningsAround(int roomX, int roomZ)
+    {
+	if (hasOpenDoor(roomX - 1, roomZ, DungeonBuilderLogic.DOOR_EAST) && doors[cell(roomX - 1, roomZ)] == 0)
+	{
+	    addOpening(roomX - 1, roomZ);
+	}
+	if (hasOpenDoor(roomX + 1, roomZ, DungeonBuilderLogic.DOOR_WEST) && doors[cell(roomX + 1, roomZ)] == 0)
+	{
+	    addOpening(roomX + 1, roomZ);
+	}
+	if (hasOpenDoor(roomX, roomZ - 1, DungeonBuilderLogic.DOOR_SOUTH) && doors[cell(roomX, roomZ - 1)] == 0)
+	{
+	    addOpening(roomX, roomZ - 1);
+	}
+	if (hasOpenDoor(roomX, roomZ + 1, DungeonBuilderLogic.DOOR_NORTH) && doors[cell(roomX, roomZ + 1)] == 0)
+	{
+	    addOpening(roomX, roomZ + 1);
+	}
+    }
+
+    // same as DungeonLayoutReference.shuffleArray() on the part of the queue that hasn't been used yet
+    private void shuffleOpenings()
+    {
+	for (int i = openingsTail - openingsHead - 1; i > 0; i--)
+	{
+	    int index = dbl.rand.nextInt(i + 1);
+	    int temp = openings[openingsHead + index];
+	    openings[openingsHead + index] = openings[openingsHead + i];
+	    openings[openingsHead + i] = temp;
+	}
+    }
+
+    // returns true if another chunk has a door leading into this chunk from the specified direction
+    private boolean hasOpenDoor(int x, int z, int direction)
+    {
+	if (x < 0 || z < 0 || x > 7 || z > 7)
+	{
+	    return false;
+	}
+	switch (direction)
+	{
+	case DungeonBuilderLogic.DOOR_NORTH:
+	    return z > 0 && (doors[cell(x, z - 1)] & DungeonBuilderLogic.DOOR_SOUTH) != 0;
+	case DungeonBuilderLogic.DOOR_SOUTH:
+	    return z < 7 && (doors[cell(x, z + 1)] & DungeonBuilderLogic.DOOR_NORTH) != 0;
+	case DungeonBuilderLogic.DOOR_WEST:
+	    return x > 0 && (doors[cell(x - 1, z)] & DungeonBuilderLogic.DOOR_EAST) != 0;
+	default:
+	    return x < 7 && (doors[cell(x + 1, z)] & DungeonBuilderLogic.DOOR_WEST) != 0;
+	}
+    }
+
+    // returns true if the neighbor in this direction has placed a solid wall, or if this direction leads off the map
+    private boolean hasSolidWall(int x, int z, int direction)
+    {
+	if (x < 0 || z < 0 || x > 7 || z > 7)
+	{
+	    return true;
+	}
+
+	int neighbor;
+	int facing;
+	switch (direction)
+	{
+	case DungeonBuilderLogic.DOOR_NORTH:
+	    if (z == 0)
+	    {
+		return true;
+	    }
+	    neighbor = doors[cell(x, z - 1)];
+	    facing = DungeonBuilderLogic.DOOR_SOUTH;
+	    break;
+	case DungeonBuilderLogic.DOOR_SOUTH:
+	    if (z == 7)
+	    {
+		return true;
+	    }
+	    neighbor = doors[cell(x, z + 1)];
+	    facing = DungeonBuilderLogic.DOOR_NORTH;
+	    break;
+	case DungeonBuilderLogic.DOOR_WEST:
+	    if (x == 0)
+	    {
+		return true;
+	    }
+	    neighbor = doors[cell(x - 1, z)];
+	    facing = DungeonBuilderLogic.DOOR_EAST;
+	    break;
+	default:
+	    if (x == 7)
+	    {
+		return true;
+	    }
+	    neighbor = doors[cell(x + 1, z)];
+	    facing = DungeonBuilderLogic.DOOR_WEST;
+	    break;
+	}
+	return neighbor != 0 && (neighbor & facing) == 0;
+    }
+}
@@ -1,10 +1,14 @@
 package com.catastrophe573.dimdungeons.structure;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
 
 import com.catastrophe573.dimdungeons.DimDungeons;
 import com.catastrophe573.dimdungeons.DungeonConfig;
 import com.catastrophe573.dimdungeons.block.BlockRegistrar;
+import com.catastrophe573.dimdungeons.block.PortalGroup;
 import com.catastrophe573.dimdungeons.block.TileEntityGoldPortal;
 import com.catastrophe573.dimdungeons.block.TileEntityLocalTeleporter;
 import com.catastrophe573.dimdungeons.block.TileEntityPortalKeyhole;
@@ -13,7 +17,8 @@ import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonRoom;
 import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
 import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.RoomType;
 import com.catastrophe573.dimdungeons.utils.DungeonGenData;
-import com.catastrophe573.dimdungeons.utils.DungeonUtils;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
@@ -31,29 +36,23 @@ import net.minecraft.nbt.ListNBT;
 import net.minecraft.nbt.StringNBT;
 import net.minecraft.potion.EffectInstance;
 import net.minecraft.potion.Effects;
-import net.minecraft.server.MinecraftServer;
-import net.minecraft.state.properties.StructureMode;
 import net.minecraft.tileentity.BarrelTileEntity;
 import net.minecraft.tileentity.ChestTileEntity;
 import net.minecraft.tileentity.DispenserTileEntity;
 import net.minecraft.tileentity.LockableLootTileEntity;
 import net.minecraft.tileentity.TileEntity;
-import net.minecraft.util.Mirror;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.Util;
 import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraft.world.IServerWorld;
 import net.minecraft.world.IWorld;
 import net.minecraft.world.World;
-import net.minecraft.world.gen.feature.template.PlacementSettings;
-import net.minecraft.world.gen.feature.template.Template;
 import net.minecraft.world.gen.feature.template.Template.BlockInfo;
 import net.minecraft.world.server.ServerWorld;
-import net.minecraft.world.gen.feature.template.TemplateManager;
 
 //temporarily, make this not a Feature, because 1.16.2 is going to break it again
 public class DungeonPlacementLogicAdvanced
@@ -64,7 +63,37 @@ public class DungeonPlacementLogicAdvanced
     {
     }
 
-    public static boolean place(ServerWorld world, long x, long z, DungeonGenData genData)
+    public static CompletableFuture<Boolean> place(ServerWorld world, long x, long z, DungeonGenData genData)
+    {
+	// the rooms are actually placed over the next several ticks, starting on the server thread once the design is ready
+	return DungeonBuildScheduler.enqueueWhenPlanned(planAsync(world, x, z, genData), world.getServer(), DungeonPlots.getPlotX(x), DungeonPlots.getPlotZ(z));
+    }
+
+    // designs the dungeon and turns it into a queue of rooms, but nothing is placed in the world yet
+    public static DungeonBuildJob plan(ServerWorld world, long x, long z, DungeonGenData genData)
+    {
+	if (!canStartHere(x, z))
+	{
+	    return null;
+	}
+
+	// it only depends on the world seed and the key, so it may have been designed already when the key was activated
+	DungeonBuilderLogic dbl = DungeonLayoutCache.getLayout(world.getSeed(), DungeonPlots.getPlotX(x), DungeonPlots.getPlotZ(z), DungeonType.ADVANCED, genData.dungeonTheme);
+	return makeJob(world, x, z, genData, dbl);
+    }
+
+    // the same as plan(), except that the dungeon is designed and its rooms are looked up on worker threads
+    public static CompletableFuture<DungeonBuildJob> planAsync(ServerWorld world, long x, long z, DungeonGenData genData)
+    {
+	if (!canStartHere(x, z))
+	{
+	    return CompletableFuture.completedFuture(null);
+	}
+
+	return DungeonLayoutCache.getLayoutAsync(world.getSeed(), DungeonPlots.getPlotX(x), DungeonPlots.getPlotZ(z), DungeonType.ADVANCED, genData.dungeonTheme).thenApplyAsync(dbl -> makeJob(world, x, z, genData, dbl), Util.backgroundExecutor());
+    }
+
+    private static boolean canStartHere(long x, long z)
     {
 	long entranceChunkX = (x / 16) + 8;
 	long entranceChunkZ = (z / 16) + 11;
@@ -73,14 +102,15 @@ public class DungeonPlacementLogicAdvanced
 	    DimDungeons.logMessageError("DIMDUNGEONS FATAL ERROR: advanced dungeon does not start at " + x + ", " + z);
 	    return false;
 	}
-	DimDungeons.logMessageInfo("DIMDUNGEONS START ADVANCED STRUCTURE at " + x + ", " + z);
-
-	// this is the data structure for an entire dungeon
-	DungeonBuilderLogic dbl = new DungeonBuilderLogic(world.getRandom(), entranceChunkX, entranceChunkZ, DungeonType.ADVANCED, genData.dungeonTheme);
-	int dungeonSize = DungeonConfig.DEFAULT_ADVANCED_DUNGEON_SIZE;
-	dbl.calculateDungeonShape(dungeonSize, true);
+	DimDungeons.logMessageInfo("DIMDUNGEONS START ADVANCED STRUCTURE at {}, {}", x, z);
+	return true;
+    }
 
-	// place all 64 rooms (many will be blank), for example the entrance room is at [4][7] in this array
+    // this only reads the layout and the room cache, so it is safe to run on any thread
+    private static DungeonBuildJob makeJob(ServerWorld world, long x, long z, DungeonGenData genData, DungeonBuilderLogic dbl)
+    {
+	// queue up all 64 rooms (many will be blank), for example the entrance room is at [4][7] in this array
+	DungeonBuildJob job = new DungeonBuildJob(x, z);
 	for (int i = 0; i < 8; i++)
 	{
 	    for (int j = 0; j < 8; j++)
@@ -96,28 +126,46 @@ public class DungeonPlacementLogicAdvanced
 		    // I'm not sure what the +4 is for, but it is needed
 		    ChunkPos cpos = new ChunkPos(((int) x / 16) + i + 4, ((int) z / 16) + j + 4);
 
-		    if (nextRoom.type == RoomType.LARGE)
+		    // find the already rotated room now, so that the server thread only has to write the blocks
+		    RoomTemplateCache.CachedRoom template = RoomTemplateCache.getIfCached(nextRoom.structure);
+		    int indexX = i;
+		    int indexZ = j;
+
+		    // large rooms are queued in the same order as before, so that they are always placed before their dummy rooms
+		    Runnable step = () ->
 		    {
-			if (!putLargeRoomHere(cpos, world, nextRoom, genData))
+			if (nextRoom.type == RoomType.LARGE)
 			{
-			    DimDungeons.logMessageError("DIMDUNGEONS ERROR UNABLE TO PLACE ***LARGE*** STRUCTURE: " + nextRoom.structure);
+			    if (!putLargeRoomHere(cpos, world, nextRoom, template, genData))
+			    {
+				DimDungeons.logMessageError("DIMDUNGEONS ERROR UNABLE TO PLACE ***LARGE*** STRUCTURE: " + nextRoom.structure);
+			    }
+			    closeDoorsOnLargeRoom(cpos, world, nextRoom, genData, indexX, indexZ, dbl);
 			}
-			closeDoorsOnLargeRoom(cpos, world, nextRoom, genData, i, j, dbl);
-		    }
-		    else if (nextRoom.type == RoomType.LARGE_DUMMY)
+			else if (nextRoom.type == RoomType.LARGE_DUMMY)
+			{
+			    // this isn't trivial because dummy rooms still have to close doorways that lead out of bounds
+			    closeDoorsOnLargeRoom(cpos, world, nextRoom, genData, indexX, indexZ, dbl);
+			}
+			else if (!putRoomHere(cpos, world, nextRoom, template, genData))
+			{
+			    DimDungeons.logMessageError("DIMDUNGEONS ERROR UNABLE TO PLACE STRUCTURE: " + nextRoom.structure);
+			}
+		    };
+
+		    if (nextRoom.type == RoomType.ENTRANCE)
 		    {
-			// this isn't trivial because dummy rooms still have to close doorways that lead out of bounds
-			closeDoorsOnLargeRoom(cpos, world, nextRoom, genData, i, j, dbl);
+			job.addEntranceRoom(step);
 		    }
-		    else if (!putRoomHere(cpos, world, nextRoom, genData))
+		    else
 		    {
-			DimDungeons.logMessageError("DIMDUNGEONS ERROR UNABLE TO PLACE STRUCTURE: " + nextRoom.structure);
+			job.addRoom(step);
 		    }
 		}
 	    }
 	}
 
-	return true;
+	return job;
     }
 
     // also used to by the DungeonChunkGenerator, note that the dimension check is not done here
@@ -147,17 +195,11 @@ public class DungeonPlacementLogicAdvanced
     }
 
     // used by the place() function to actually place rooms
-    public static boolean putLargeRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, DungeonGenData genData)
+    public static boolean putLargeRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, @Nullable RoomTemplateCache.CachedRoom cachedTemplate, DungeonGenData genData)
     {
-	MinecraftServer minecraftserver = ((World) world).getServer();
-	TemplateManager templatemanager = DungeonUtils.getDungeonWorld(minecraftserver).getStructureManager();
-
-	Template template = templatemanager.get(new ResourceLocation(room.structure));
-	PlacementSettings placementsettings = (new PlacementSettings()).setMirror(Mirror.NONE).setRotation(Rotation.NONE).setIgnoreEntities(false).setChunkPos(cpos);
-	placementsettings.setRotation(Rotation.NONE);
-	placementsettings.setBoundingBox(new MutableBoundingBox(cpos.x * 16, 0, cpos.z * 16, (cpos.x * 16) + 32 - 1, 255, (cpos.z * 16) + 32 - 1));
+	// the template is normally found while the dungeon is being designed, unless the room wasn't cached yet
+	RoomTemplateCache.CachedRoom template = cachedTemplate != null ? cachedTemplate : RoomTemplateCache.get(world.getServer(), room.structure);
 	BlockPos position = new BlockPos(cpos.getMinBlockX(), 50, cpos.getMinBlockZ());
-	BlockPos sizeRange = new BlockPos(32, 13, 32);
 
 	if (template == null)
 	{
@@ -165,26 +207,13 @@ public class DungeonPlacementLogicAdvanced
 	    return false;
 	}
 
-	// I assume this function is addBlocksToWorld()	
-	DimDungeons.logMessageInfo("Placing a large room: " + room.structure);
-	boolean success = template.placeInWorld((IServerWorld) world, position, sizeRange, placementsettings, world.getRandom(), 2);
+	DimDungeons.logMessageInfo(() -> "Placing a large room: " + room.structure);
+	template.placeInWorld(world, position, Rotation.NONE, world.getRandom());
 
-	// handle data blocks - this code block is copied from TemplateStructurePiece
-	//Map<BlockPos, String> map = template.getDataBlocks(position, placementsettings); // 1.12 / 1.13 version
-	//List<Template.BlockInfo> dblocks = template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK, true); // my old 1.14.2 method
-	for (Template.BlockInfo template$blockinfo : template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK))
-	{
-	    if (template$blockinfo.nbt != null)
-	    {
-		StructureMode structuremode = StructureMode.valueOf(template$blockinfo.nbt.getString("mode"));
-		if (structuremode == StructureMode.DATA)
-		{
-		    handleDataBlock(template$blockinfo.nbt.getString("metadata"), template$blockinfo.pos, world, world.getRandom(), placementsettings.getBoundingBox(), genData);
-		}
-	    }
-	}
+	// handle data blocks, which were already found and sorted out when the room was cached
+	template.handleDataMarkers(position, Rotation.NONE, (marker, pos) -> handleDataBlock(marker, pos, world, world.getRandom(), genData));
 
-	return success;
+	return true;
     }
 
     public static void closeDoorsOnLargeRoom(ChunkPos cpos, ServerWorld world, DungeonRoom room, DungeonGenData genDat, int indexX, int indexZ, DungeonBuilderLogic dbl)
@@ -321,18 +350,11 @@ public class DungeonPlacementLogicAdvanced
     }
 
     // used by the place() function to actually place rooms
-    public static boolean putRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, DungeonGenData genData)
+    public static boolean putRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, @Nullable RoomTemplateCache.CachedRoom cachedTemplate, DungeonGenData genData)
     {
-	MinecraftServer minecraftserver = ((World) world).getServer();
-	TemplateManager templatemanager = DungeonUtils.getDungeonWorld(minecraftserver).getStructureManager();
-
-	Template template = templatemanager.get(new ResourceLocation(room.structure));
-	PlacementSettings placementsettings = (new PlacementSettings()).setMirror(Mirror.NONE).setRotation(Rotation.NONE).setIgnoreEntities(false).setChunkPos(cpos);
-	placementsettings.setBoundingBox(placementsettings.getBoundingBox());
-
-	placementsettings.setRotation(room.rotation);
+	// the template is normally found while the dungeon is being designed, unless the room wasn't cached yet
+	RoomTemplateCache.CachedRoom template = cachedTemplate != null ? cachedTemplate : RoomTemplateCache.get(world.getServer(), room.structure);
 	BlockPos position = new BlockPos(cpos.getMinBlockX(), 50, cpos.getMinBlockZ());
-	BlockPos sizeRange = new BlockPos(16, 13, 16);
 
 	if (template == null)
 	{
@@ -340,57 +362,20 @@ public class DungeonPlacementLogicAdvanced
 	    return false;
 	}
 
-	// next if the structure is to be rotated then it must also be offset, because rotating a structure also moves it
-	if (room.rotation == Rotation.COUNTERCLOCKWISE_90)
-	{
-	    // west: rotate CCW and push +Z
-	    placementsettings.setRotation(Rotation.COUNTERCLOCKWISE_90);
-	    position = position.offset(0, 0, template.getSize().getZ() - 1);
-	}
-	else if (room.rotation == Rotation.CLOCKWISE_90)
-	{
-	    // east rotate CW and push +X
-	    placementsettings.setRotation(Rotation.CLOCKWISE_90);
-	    position = position.offset(template.getSize().getX() - 1, 0, 0);
-	}
-	else if (room.rotation == Rotation.CLOCKWISE_180)
-	{
-	    // south: rotate 180 and push both +X and +Z
-	    placementsettings.setRotation(Rotation.CLOCKWISE_180);
-	    position = position.offset(template.getSize().getX() - 1, 0, template.getSize().getZ() - 1);
-	}
-	else //if (nextRoom.rotation == Rotation.NONE)
-	{
-	    // north: no rotation
-	    placementsettings.setRotation(Rotation.NONE);
-	}
+	// the cached room is already rotated, and already offset to account for rotating a structure also moving it
+	DimDungeons.logMessageInfo(() -> "Placing a room: " + room.structure);
+	template.placeInWorld(world, position, room.rotation, world.getRandom());
 
-	// I assume this function is addBlocksToWorld()	
-	DimDungeons.logMessageInfo("Placing a room: " + room.structure);
-	boolean success = template.placeInWorld((IServerWorld) world, position, sizeRange, placementsettings, world.getRandom(), 2);
-
-	// handle data blocks - this code block is copied from TemplateStructurePiece
-	//Map<BlockPos, String> map = template.getDataBlocks(position, placementsettings); // 1.12 / 1.13 version
-	//List<Template.BlockInfo> dblocks = template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK, true); // my old 1.14.2 method
-	for (Template.BlockInfo template$blockinfo : template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK))
-	{
-	    if (template$blockinfo.nbt != null)
-	    {
-		StructureMode structuremode = StructureMode.valueOf(template$blockinfo.nbt.getString("mode"));
-		if (structuremode == StructureMode.DATA)
-		{
-		    handleDataBlock(template$blockinfo.nbt.getString("metadata"), template$blockinfo.pos, world, world.getRandom(), placementsettings.getBoundingBox(), genData);
-		}
-	    }
-	}
+	// handle data blocks, which were already found and sorted out when the room was cached
+	template.handleDataMarkers(position, room.rotation, (marker, pos) -> handleDataBlock(marker, pos, world, world.getRandom(), genData));
 
 	// replace all red carpet in entrance rooms with green carpet
-	for (BlockInfo info : template.filterBlocks(position, placementsettings, Blocks.RED_CARPET))
+	for (BlockInfo info : template.filterBlocks(position, room.rotation, Blocks.RED_CARPET))
 	{
 	    world.setBlock(info.pos, Blocks.GREEN_CARPET.defaultBlockState(), 3);
 	}
 
-	return success;
+	return true;
     }
 
     // another debugging function
@@ -408,20 +393,27 @@ public class DungeonPlacementLogicAdvanced
     }
 
     // resembles TemplateStructurePiece.handleDataMarker()
-    protected static void handleDataBlock(String name, BlockPos pos, ServerWorld world, Random rand, MutableBoundingBox bb, DungeonGenData genData)
+    protected static void handleDataBlock(DataMarker marker, BlockPos pos, ServerWorld world, Random rand, DungeonGenData genData)
     {
-	//DimDungeons.LOGGER.info("DATA BLOCK NAME: " + name);
-
-	if ("ReturnPortal".equals(name))
+	switch (marker)
+	{
+	case RETURN_PORTAL:
 	{
 	    world.setBlock(pos, BlockRegistrar.block_gold_portal.defaultBlockState(), 2); // erase this data block
 	    TileEntityGoldPortal te = (TileEntityGoldPortal) world.getBlockEntity(pos);
 	    if (te != null)
 	    {
 		te.setDestination(genData.returnPoint.getX() + 0.5D, genData.returnPoint.getY() + 0.1D, genData.returnPoint.getZ() + 0.5D, genData.returnDimension);
+
+		// the whole exit doorway shares one cooldown, named after the entrance of this dungeon
+		ItemPortalKey key = (ItemPortalKey) genData.keyItem.getItem();
+		BlockPos entrance = new BlockPos(key.getWarpX(genData.keyItem), 55, key.getWarpZ(genData.keyItem));
+		te.setPortalGroup(entrance, PortalGroup.get(world, entrance, DungeonConfig.portalCooldownTicks));
 	    }
+	    DungeonRegistry.get(world.getServer()).addExitPortal(pos);
+	    break;
 	}
-	else if ("BackToEntrance".equals(name))
+	case BACK_TO_ENTRANCE:
 	{
 	    world.setBlock(pos, BlockRegistrar.block_local_teleporter.defaultBlockState(), 2); // erase this data block
 	    TileEntityLocalTeleporter te = (TileEntityLocalTeleporter) world.getBlockEntity(pos);
@@ -432,16 +424,19 @@ public class DungeonPlacementLogicAdvanced
 		double entranceZ = key.getWarpZ(genData.keyItem);
 		te.setDestination(entranceX, 55.1D, entranceZ, 0.0f, 180.0f);
 	    }
+	    break;
 	}
-	else if ("LockItStoneBrick".equals(name))
+	case LOCK_IT_STONE_BRICK:
 	{
 	    world.setBlock(pos, Blocks.STONE_BRICKS.defaultBlockState(), 2); // erase this data block 
+	    break;
 	}
-	else if ("LockIt".equals(name))
+	case LOCK_IT:
 	{
 	    // do nothing!
+	    break;
 	}
-	else if ("FortuneTeller".equals(name))
+	case FORTUNE_TELLER:
 	{
 	    world.setBlock(pos, Blocks.STONE_BRICKS.defaultBlockState(), 2); // erase this data block 
 	    faceContainerTowardsAir(world, pos.below());
@@ -458,16 +453,19 @@ public class DungeonPlacementLogicAdvanced
 	    {
 		DimDungeons.logMessageError("DIMDUNGEONS TILE ENTITY ERROR: unable to place a fortune teller block.");
 	    }
+	    break;
 	}
-	else if ("ChestLoot1".equals(name))
+	case CHEST_LOOT_1:
 	{
 	    fillChestBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_advanced_easy"), world, rand);
+	    break;
 	}
-	else if ("ChestLoot2".equals(name))
+	case CHEST_LOOT_2:
 	{
 	    fillChestBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_advanced_hard"), world, rand);
+	    break;
 	}
-	else if ("ChestLootLucky".equals(name))
+	case CHEST_LOOT_LUCKY:
 	{
 	    // 70% nothing, 30% random minecraft loot table that isn't an end city
 	    int lucky = rand.nextInt(100);
@@ -489,17 +487,20 @@ public class DungeonPlacementLogicAdvanced
 		world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block 
 		world.setBlock(pos.below(), Blocks.AIR.defaultBlockState(), 2); // and erase the chest below it
 	    }
+	    break;
 	}
-	else if ("SetTrappedLoot".equals(name))
+	case SET_TRAPPED_LOOT:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    LockableLootTileEntity.setLootTable(world, rand, pos.below(), new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_advanced_easy"));
+	    setLootTableBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_advanced_easy"), world, rand);
+	    break;
 	}
-	else if ("BarrelLoot1".equals(name))
+	case BARREL_LOOT_1:
 	{
 	    fillBarrelBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_advanced_easy"), world, rand);
+	    break;
 	}
-	else if ("PlaceL2Key".equals(name))
+	case PLACE_L2_KEY:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    TileEntityPortalKeyhole te = (TileEntityPortalKeyhole) world.getBlockEntity(pos.below());
@@ -513,23 +514,27 @@ public class DungeonPlacementLogicAdvanced
 		    //te.updateContainingBlockInfo();
 		}
 	    }
+	    break;
 	}
-	else if ("SummonWitch".equals(name))
+	case SUMMON_WITCH:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    spawnEnemyHere(pos, "minecraft:witch", world);
+	    summonEnemyHere(pos, "minecraft:witch", world);
+	    break;
 	}
-	else if ("SummonWaterEnemy".equals(name))
+	case SUMMON_WATER_ENEMY:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    spawnEnemyHere(pos, "minecraft:guardian", world);
+	    summonEnemyHere(pos, "minecraft:guardian", world);
+	    break;
 	}
-	else if ("SummonEnderman".equals(name))
+	case SUMMON_ENDERMAN:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    spawnEnemyHere(pos, "minecraft:enderman", world);
+	    summonEnemyHere(pos, "minecraft:enderman", world);
+	    break;
 	}
-	else if ("SummonEnemy1".equals(name))
+	case SUMMON_ENEMY_1:
 	{
 	    // 50% chance of a weak enemy OR BLAZE
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
@@ -537,25 +542,42 @@ public class DungeonPlacementLogicAdvanced
 	    int poolSize = DungeonConfig.advancedEnemySet1.size();
 	    String mobid = DungeonConfig.advancedEnemySet1.get(rand.nextInt(poolSize));
 
-	    spawnEnemyHere(pos, mobid, world);
+	    summonEnemyHere(pos, mobid, world);
+	    break;
 	}
-	else if ("SummonEnemy2".equals(name))
+	case SUMMON_ENEMY_2:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 
 	    int poolSize = DungeonConfig.advancedEnemySet2.size();
 	    String mobid = DungeonConfig.advancedEnemySet2.get(rand.nextInt(poolSize));
 
-	    spawnEnemyHere(pos, mobid, world);
+	    summonEnemyHere(pos, mobid, world);
+	    break;
 	}
-	else
+	default:
 	{
-	    DimDungeons.logMessageWarn("UNHANDLED DATA BLOCK WITH name = " + name);
+	    // unrecognized names were already logged when the room was cached
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
+	    break;
+	}
 	}
     }
 
-    private static void spawnEnemyHere(BlockPos pos, String resourceLocation, IWorld world)
+    // enemies are normally only remembered here, and the DungeonSpawnManager spawns them once a player walks into their room
+    private static void summonEnemyHere(BlockPos pos, String resourceLocation, ServerWorld world)
+    {
+	if (DungeonConfig.enemyDespawnTicks > 0)
+	{
+	    DungeonRegistry.get(world.getServer()).addSpawnPoint(pos, resourceLocation, ItemStack.EMPTY);
+	}
+	else
+	{
+	    spawnEnemyHere(pos, resourceLocation, world);
+	}
+    }
+
+    static Entity spawnEnemyHere(BlockPos pos, String resourceLocation, IWorld world)
     {
 	EntityType<?> entitytype = EntityType.byString(resourceLocation).orElse(EntityType.CHICKEN);
 
@@ -586,15 +608,26 @@ public class DungeonPlacementLogicAdvanced
 	    // not needed with the new spawn() above
 	    //((MobEntity)mob).onInitialSpawn((IServerWorld) world, world.getDifficultyForLocation(pos), SpawnReason.STRUCTURE, (ILivingEntityData) null, (CompoundNBT) null);
 	}
+	return mob;
     }
 
-    private static void fillChestBelow(BlockPos pos, ResourceLocation lootTable, IWorld world, Random rand)
+    // also remembers where the container is, so the Bell of Secrets doesn't have to search for it
+    private static void setLootTableBelow(BlockPos pos, ResourceLocation lootTable, ServerWorld world, Random rand)
+    {
+	LockableLootTileEntity.setLootTable(world, rand, pos.below(), lootTable);
+	if (world.getBlockEntity(pos.below()) instanceof LockableLootTileEntity)
+	{
+	    DungeonRegistry.get(world.getServer()).addLootContainer(pos.below());
+	}
+    }
+
+    private static void fillChestBelow(BlockPos pos, ResourceLocation lootTable, ServerWorld world, Random rand)
     {
 	world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	faceContainerTowardsAir(world, pos.below());
 
 	// set the loot table
-	LockableLootTileEntity.setLootTable(world, rand, pos.below(), lootTable);
+	setLootTableBelow(pos, lootTable, world, rand);
 	if (!(world.getBlockEntity(pos.below()) instanceof ChestTileEntity))
 	{
 	    DimDungeons.logMessageWarn("DIMDUNGEONS: FAILED TO PLACE CHEST IN DUNGEON. pos = " + pos.getX() + ", " + pos.getZ());
@@ -602,12 +635,12 @@ public class DungeonPlacementLogicAdvanced
     }
 
     // probably do not need this anymore
-    private static void fillBarrelBelow(BlockPos pos, ResourceLocation lootTable, IWorld world, Random rand)
+    private static void fillBarrelBelow(BlockPos pos, ResourceLocation lootTable, ServerWorld world, Random rand)
     {
 	world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 
 	// set the loot table
-	LockableLootTileEntity.setLootTable(world, rand, pos.below(), lootTable);
+	setLootTableBelow(pos, lootTable, world, rand);
 	if (!(world.getBlockEntity(pos.below()) instanceof BarrelTileEntity))
 	{
 	    DimDungeons.logMessageWarn("DIMDUNGEONS: FAILED TO PLACE BARREL IN DUNGEON. pos = " + pos.getX() + ", " + pos.getZ());
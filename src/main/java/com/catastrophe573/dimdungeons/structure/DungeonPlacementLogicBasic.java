@@ -1,10 +1,14 @@
 package com.catastrophe573.dimdungeons.structure;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
 
 import com.catastrophe573.dimdungeons.DimDungeons;
 import com.catastrophe573.dimdungeons.DungeonConfig;
 import com.catastrophe573.dimdungeons.block.BlockRegistrar;
+import com.catastrophe573.dimdungeons.block.PortalGroup;
 import com.catastrophe573.dimdungeons.block.TileEntityGoldPortal;
 import com.catastrophe573.dimdungeons.block.TileEntityLocalTeleporter;
 import com.catastrophe573.dimdungeons.block.TileEntityPortalKeyhole;
@@ -12,7 +16,10 @@ import com.catastrophe573.dimdungeons.item.ItemPortalKey;
 import com.catastrophe573.dimdungeons.item.ItemRegistrar;
 import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonRoom;
 import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.RoomType;
 import com.catastrophe573.dimdungeons.utils.DungeonGenData;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
 import com.catastrophe573.dimdungeons.utils.DungeonUtils;
 
 import net.minecraft.block.BlockState;
@@ -31,7 +38,6 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
 import net.minecraft.nbt.StringNBT;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.state.properties.StructureMode;
 import net.minecraft.tileentity.BarrelTileEntity;
 import net.minecraft.tileentity.ChestTileEntity;
 import net.minecraft.tileentity.DispenserTileEntity;
@@ -40,10 +46,10 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Hand;
 import net.minecraft.util.Mirror;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.Util;
 import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraft.world.IServerWorld;
@@ -63,9 +69,39 @@ public class DungeonPlacementLogicBasic
     {
     }
 
-    // this is the function that actually writes the 8x8 chunk structure to the world, and ALL AT ONCE
+    // this is the function that designs the 8x8 chunk structure and hands it to the DungeonBuildScheduler, which writes it to the world a few rooms per tick
     //public static boolean place(IChunk chunk, IWorld world, ChunkGenerator chunkGenerator, Random rand, ChunkPos cpos, NoFeatureConfig config)
-    public static boolean place(ServerWorld world, long x, long z, DungeonGenData genData)
+    public static CompletableFuture<Boolean> place(ServerWorld world, long x, long z, DungeonGenData genData)
+    {
+	// the rooms are actually placed over the next several ticks, starting on the server thread once the design is ready
+	return DungeonBuildScheduler.enqueueWhenPlanned(planAsync(world, x, z, genData), world.getServer(), DungeonPlots.getPlotX(x), DungeonPlots.getPlotZ(z));
+    }
+
+    // designs the dungeon and turns it into a queue of rooms, but nothing is placed in the world yet
+    public static DungeonBuildJob plan(ServerWorld world, long x, long z, DungeonGenData genData)
+    {
+	if (!canStartHere(x, z))
+	{
+	    return null;
+	}
+
+	// it only depends on the world seed and the key, so it may have been designed already when the key was activated
+	DungeonBuilderLogic dbl = DungeonLayoutCache.getLayout(world.getSeed(), DungeonPlots.getPlotX(x), DungeonPlots.getPlotZ(z), DungeonType.BASIC, genData.dungeonTheme);
+	return makeJob(world, x, z, genData, dbl);
+    }
+
+    // the same as plan(), except that the dungeon is designed and its rooms are looked up on worker threads
+    public static CompletableFuture<DungeonBuildJob> planAsync(ServerWorld world, long x, long z, DungeonGenData genData)
+    {
+	if (!canStartHere(x, z))
+	{
+	    return CompletableFuture.completedFuture(null);
+	}
+
+	return DungeonLayoutCache.getLayoutAsync(world.getSeed(), DungeonPlots.getPlotX(x), DungeonPlots.getPlotZ(z), DungeonType.BASIC, genData.dungeonTheme).thenApplyAsync(dbl -> makeJob(world, x, z, genData, dbl), Util.backgroundExecutor());
+    }
+
+    private static boolean canStartHere(long x, long z)
     {
 	long entranceChunkX = (x / 16) + 8;
 	long entranceChunkZ = (z / 16) + 11;
@@ -74,18 +110,15 @@ public class DungeonPlacementLogicBasic
 	    DimDungeons.logMessageError("DIMDUNGEONS FATAL ERROR: basic dungeon does not start at " + x + ", " + z);
 	    return false;
 	}
-	DimDungeons.logMessageInfo("DIMDUNGEONS START BASIC STRUCTURE at " + x + ", " + z);
-
-	// this is the data structure for an entire dungeon
-	DungeonBuilderLogic dbl = new DungeonBuilderLogic(world.getRandom(), entranceChunkX, entranceChunkZ, DungeonType.BASIC, genData.dungeonTheme);
-	int dungeonSize = DungeonConfig.DEFAULT_BASIC_DUNGEON_SIZE;
-	if (genData.dungeonTheme > 0)
-	{
-	    dungeonSize = DungeonConfig.themeSettings.get(genData.dungeonTheme-1).themeDungeonSize;
-	}
-	dbl.calculateDungeonShape(dungeonSize, false);
+	DimDungeons.logMessageInfo("DIMDUNGEONS START BASIC STRUCTURE at {}, {}", x, z);
+	return true;
+    }
 
-	// place all 64 rooms (many will be blank), for example the entrance room is at [4][7] in this array
+    // this only reads the layout and the room cache, so it is safe to run on any thread
+    private static DungeonBuildJob makeJob(ServerWorld world, long x, long z, DungeonGenData genData, DungeonBuilderLogic dbl)
+    {
+	// queue up all 64 rooms (many will be blank), for example the entrance room is at [4][7] in this array
+	DungeonBuildJob job = new DungeonBuildJob(x, z);
 	for (int i = 0; i < 8; i++)
 	{
 	    for (int j = 0; j < 8; j++)
@@ -101,15 +134,30 @@ public class DungeonPlacementLogicBasic
 		    // I'm not sure what the +4 is for, but it is needed
 		    ChunkPos cpos = new ChunkPos(((int) x / 16) + i + 4, ((int) z / 16) + j + 4);
 
-		    if (!putRoomHere(cpos, world, nextRoom, genData))
+		    // find the already rotated room now, so that the server thread only has to write the blocks
+		    RoomTemplateCache.CachedRoom template = RoomTemplateCache.getIfCached(nextRoom.structure);
+
+		    Runnable step = () ->
+		    {
+			if (!putRoomHere(cpos, world, nextRoom, template, genData))
+			{
+			    DimDungeons.logMessageError("DIMDUNGEONS ERROR UNABLE TO PLACE STRUCTURE: " + nextRoom.structure);
+			}
+		    };
+
+		    if (nextRoom.type == RoomType.ENTRANCE)
 		    {
-			DimDungeons.logMessageError("DIMDUNGEONS ERROR UNABLE TO PLACE STRUCTURE: " + nextRoom.structure);
+			job.addEntranceRoom(step);
+		    }
+		    else
+		    {
+			job.addRoom(step);
 		    }
 		}
 	    }
 	}
 
-	return true;
+	return job;
     }
 
     public static boolean isDungeonChunk(long x, long z)
@@ -155,18 +203,11 @@ public class DungeonPlacementLogicBasic
     }
 
     // used by the place() function to actually place rooms
-    public static boolean putRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, DungeonGenData genData)
+    public static boolean putRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, @Nullable RoomTemplateCache.CachedRoom cachedTemplate, DungeonGenData genData)
     {
-	MinecraftServer minecraftserver = ((World) world).getServer();
-	TemplateManager templatemanager = DungeonUtils.getDungeonWorld(minecraftserver).getStructureManager();
-
-	Template template = templatemanager.get(new ResourceLocation(room.structure));
-	PlacementSettings placementsettings = (new PlacementSettings()).setMirror(Mirror.NONE).setRotation(Rotation.NONE).setIgnoreEntities(false).setChunkPos(cpos);
-	placementsettings.setBoundingBox(placementsettings.getBoundingBox());
-
-	placementsettings.setRotation(room.rotation);
+	// the template is normally found while the dungeon is being designed, unless the room wasn't cached yet
+	RoomTemplateCache.CachedRoom template = cachedTemplate != null ? cachedTemplate : RoomTemplateCache.get(world.getServer(), room.structure);
 	BlockPos position = new BlockPos(cpos.getMinBlockX(), 50, cpos.getMinBlockZ());
-	BlockPos sizeRange = new BlockPos(16, 13, 16);
 
 	if (template == null)
 	{
@@ -174,50 +215,13 @@ public class DungeonPlacementLogicBasic
 	    return false;
 	}
 
-	// next if the structure is to be rotated then it must also be offset, because rotating a structure also moves it
-	if (room.rotation == Rotation.COUNTERCLOCKWISE_90)
-	{
-	    // west: rotate CCW and push +Z
-	    placementsettings.setRotation(Rotation.COUNTERCLOCKWISE_90);
-	    position = position.offset(0, 0, template.getSize().getZ() - 1);
-	}
-	else if (room.rotation == Rotation.CLOCKWISE_90)
-	{
-	    // east rotate CW and push +X
-	    placementsettings.setRotation(Rotation.CLOCKWISE_90);
-	    position = position.offset(template.getSize().getX() - 1, 0, 0);
-	}
-	else if (room.rotation == Rotation.CLOCKWISE_180)
-	{
-	    // south: rotate 180 and push both +X and +Z
-	    placementsettings.setRotation(Rotation.CLOCKWISE_180);
-	    position = position.offset(template.getSize().getX() - 1, 0, template.getSize().getZ() - 1);
-	}
-	else //if (nextRoom.rotation == Rotation.NONE)
-	{
-	    // north: no rotation
-	    placementsettings.setRotation(Rotation.NONE);
-	}
+	// the cached room is already rotated, and already offset to account for rotating a structure also moving it
+	DimDungeons.logMessageInfo(() -> "Placing a room: " + room.structure);
+	template.placeInWorld(world, position, room.rotation, world.getRandom());
 
-	// formerly: call Template.addBlocksToWorld()
-	DimDungeons.logMessageInfo("Placing a room: " + room.structure);
-	boolean success = template.placeInWorld((IServerWorld) world, position, sizeRange, placementsettings, world.getRandom(), 2);
-
-	// handle data blocks - this code block is copied from TemplateStructurePiece
-	//Map<BlockPos, String> map = template.getDataBlocks(position, placementsettings); // 1.12 / 1.13 version
-	//List<Template.BlockInfo> dblocks = template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK, true); // my old 1.14.2 method
-	for (Template.BlockInfo template$blockinfo : template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK))
-	{
-	    if (template$blockinfo.nbt != null)
-	    {
-		StructureMode structuremode = StructureMode.valueOf(template$blockinfo.nbt.getString("mode"));
-		if (structuremode == StructureMode.DATA)
-		{
-		    handleDataBlock(template$blockinfo.nbt.getString("metadata"), template$blockinfo.pos, world, world.getRandom(), placementsettings.getBoundingBox(), genData);
-		}
-	    }
-	}
-	return success;
+	// handle data blocks, which were already found and sorted out when the room was cached
+	template.handleDataMarkers(position, room.rotation, (marker, pos) -> handleDataBlock(marker, pos, world, world.getRandom(), genData));
+	return true;
     }
 
     // another debugging function
@@ -235,20 +239,27 @@ public class DungeonPlacementLogicBasic
     }
 
     // resembles TemplateStructurePiece.handleDataMarker()
-    protected static void handleDataBlock(String name, BlockPos pos, ServerWorld world, Random rand, MutableBoundingBox bb, DungeonGenData genData)
+    protected static void handleDataBlock(DataMarker marker, BlockPos pos, ServerWorld world, Random rand, DungeonGenData genData)
     {
-	//DimDungeons.LOGGER.info("DATA BLOCK NAME: " + name);
-	
-	if ("ReturnPortal".equals(name))
+	switch (marker)
+	{
+	case RETURN_PORTAL:
 	{
 	    world.setBlock(pos, BlockRegistrar.block_gold_portal.defaultBlockState(), 2); // erase this data block
 	    TileEntityGoldPortal te = (TileEntityGoldPortal) world.getBlockEntity(pos);
 	    if (te != null)
 	    {
 		te.setDestination(genData.returnPoint.getX() + 0.5D, genData.returnPoint.getY() + 0.1D, genData.returnPoint.getZ() + 0.5D, genData.returnDimension);
+
+		// the whole exit doorway shares one cooldown, named after the entrance of this dungeon
+		ItemPortalKey key = (ItemPortalKey) genData.keyItem.getItem();
+		BlockPos entrance = new BlockPos(key.getWarpX(genData.keyItem), 55, key.getWarpZ(genData.keyItem));
+		te.setPortalGroup(entrance, PortalGroup.get(world, entrance, DungeonConfig.portalCooldownTicks));
 	    }
+	    DungeonRegistry.get(world.getServer()).addExitPortal(pos);
+	    break;
 	}
-	else if ("BackToEntrance".equals(name))
+	case BACK_TO_ENTRANCE:
 	{
 	    world.setBlock(pos, BlockRegistrar.block_local_teleporter.defaultBlockState(), 2); // erase this data block
 	    TileEntityLocalTeleporter te = (TileEntityLocalTeleporter) world.getBlockEntity(pos);
@@ -259,16 +270,19 @@ public class DungeonPlacementLogicBasic
 		double entranceZ = key.getWarpZ(genData.keyItem);
 		te.setDestination(entranceX, 55.1D, entranceZ, 0.0f, 180.0f);
 	    }
+	    break;
 	}
-	else if ("LockItStoneBrick".equals(name))
+	case LOCK_IT_STONE_BRICK:
 	{
 	    world.setBlock(pos, Blocks.STONE_BRICKS.defaultBlockState(), 2); // erase this data block 
+	    break;
 	}
-	else if ("LockIt".equals(name))
+	case LOCK_IT:
 	{
 	    // do nothing!
+	    break;
 	}
-	else if ("FortuneTeller".equals(name))
+	case FORTUNE_TELLER:
 	{
 	    world.setBlock(pos, Blocks.STONE_BRICKS.defaultBlockState(), 2); // erase this data block 
 	    faceContainerTowardsAir(world, pos.below());
@@ -285,16 +299,19 @@ public class DungeonPlacementLogicBasic
 	    {
 		DimDungeons.logMessageWarn("DIMDUNGEONS TILE ENTITY ERROR: unable to place a fortune teller block.");
 	    }
+	    break;
 	}
-	else if ("ChestLoot1".equals(name))
+	case CHEST_LOOT_1:
 	{
 	    fillChestBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_basic_easy"), world, rand);
+	    break;
 	}
-	else if ("ChestLoot2".equals(name))
+	case CHEST_LOOT_2:
 	{
 	    fillChestBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_basic_hard"), world, rand);
+	    break;
 	}
-	else if ("ChestLootLucky".equals(name))
+	case CHEST_LOOT_LUCKY:
 	{
 	    // 70% nothing, 30% random minecraft loot table that isn't an end city
 	    int lucky = rand.nextInt(100);
@@ -316,17 +333,20 @@ public class DungeonPlacementLogicBasic
 		world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block 
 		world.setBlock(pos.below(), Blocks.AIR.defaultBlockState(), 2); // and erase the chest below it
 	    }
+	    break;
 	}
-	else if ("SetTrappedLoot".equals(name))
+	case SET_TRAPPED_LOOT:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    LockableLootTileEntity.setLootTable(world, rand, pos.below(), new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_basic_easy"));
+	    setLootTableBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_basic_easy"), world, rand);
+	    break;
 	}
-	else if ("BarrelLoot1".equals(name))
+	case BARREL_LOOT_1:
 	{
 	    fillBarrelBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_basic_easy"), world, rand);
+	    break;
 	}
-	else if ("PlaceL2Key".equals(name))
+	case PLACE_L2_KEY:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    TileEntityPortalKeyhole te = (TileEntityPortalKeyhole) world.getBlockEntity(pos.below());
@@ -339,23 +359,27 @@ public class DungeonPlacementLogicBasic
 		    te.setContents(key);
 		}
 	    }
+	    break;
 	}
-	else if ("SummonWitch".equals(name))
+	case SUMMON_WITCH:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    spawnEnemyHere(pos, "minecraft:witch", world, genData.dungeonTheme);
+	    summonEnemyHere(pos, "minecraft:witch", world, genData.dungeonTheme);
+	    break;
 	}
-	else if ("SummonWaterEnemy".equals(name))
+	case SUMMON_WATER_ENEMY:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    spawnEnemyHere(pos, "minecraft:guardian", world, genData.dungeonTheme);
+	    summonEnemyHere(pos, "minecraft:guardian", world, genData.dungeonTheme);
+	    break;
 	}
-	else if ("SummonEnderman".equals(name))
+	case SUMMON_ENDERMAN:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
-	    spawnEnemyHere(pos, "minecraft:enderman", world, genData.dungeonTheme);
+	    summonEnemyHere(pos, "minecraft:enderman", world, genData.dungeonTheme);
+	    break;
 	}
-	else if ("SummonEnemy1".equals(name))
+	case SUMMON_ENEMY_1:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 
@@ -367,9 +391,10 @@ public class DungeonPlacementLogicBasic
 		mobid = DungeonConfig.themeSettings.get(genData.dungeonTheme - 1).themeEnemySet1.get(rand.nextInt(poolSize));
 	    }
 
-	    spawnEnemyHere(pos, mobid, world, genData.dungeonTheme);
+	    summonEnemyHere(pos, mobid, world, genData.dungeonTheme);
+	    break;
 	}
-	else if ("SummonEnemy2".equals(name))
+	case SUMMON_ENEMY_2:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 
@@ -381,16 +406,47 @@ public class DungeonPlacementLogicBasic
 		mobid = DungeonConfig.themeSettings.get(genData.dungeonTheme - 1).themeEnemySet2.get(rand.nextInt(poolSize));
 	    }
 
-	    spawnEnemyHere(pos, mobid, world, genData.dungeonTheme);
+	    summonEnemyHere(pos, mobid, world, genData.dungeonTheme);
+	    break;
 	}
-	else
+	default:
 	{
-	    DimDungeons.logMessageWarn("UNHANDLED DATA BLOCK WITH name = " + name);
+	    // unrecognized names were already logged when the room was cached
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
+	    break;
+	}
 	}
     }
 
-    private static void spawnEnemyHere(BlockPos pos, String resourceLocation, ServerWorld world, int theme)
+    // enemies are normally only remembered here, and the DungeonSpawnManager spawns them once a player walks into their room
+    private static void summonEnemyHere(BlockPos pos, String resourceLocation, ServerWorld world, int theme)
+    {
+	// the key is rolled once here and remembered with the spawn point, so that waking the enemy up again can't roll for another one
+	ItemStack offhandKey = rollThemeKey(world, theme);
+	if (DungeonConfig.enemyDespawnTicks > 0)
+	{
+	    DungeonRegistry.get(world.getServer()).addSpawnPoint(pos, resourceLocation, offhandKey);
+	}
+	else
+	{
+	    spawnEnemyHere(pos, resourceLocation, world, theme, offhandKey);
+	}
+    }
+
+    // randomly put a themed key into a mob's offhand, returns an empty stack most of the time
+    private static ItemStack rollThemeKey(ServerWorld world, int theme)
+    {
+	if (world.getRandom().nextInt(100) < DungeonConfig.chanceForThemeKeys && DungeonConfig.themeSettings.size() > 0 && theme < 1)
+	{
+	    int numThemes = DungeonConfig.themeSettings.size();
+	    ItemStack stack = new ItemStack(ItemRegistrar.item_portal_key);
+	    ((ItemPortalKey) (ItemRegistrar.item_portal_key.asItem())).activateKeyLevel1(world.getServer(), stack, world.getRandom().nextInt(numThemes) + 1);
+	    return stack;
+	}
+	return ItemStack.EMPTY;
+    }
+
+    static Entity spawnEnemyHere(BlockPos pos, String resourceLocation, ServerWorld world, int theme, ItemStack offhandKey)
     {
 	EntityType<?> entitytype = EntityType.byString(resourceLocation).orElse(EntityType.CHICKEN);
 
@@ -416,45 +472,48 @@ public class DungeonPlacementLogicBasic
 	    ((MobEntity) mob).getAttribute(Attributes.MAX_HEALTH).setBaseValue(tempHealth.getBaseValue() * healthScaling);
 	    ((MobEntity) mob).setHealth((float) ((MobEntity) mob).getAttribute(Attributes.MAX_HEALTH).getBaseValue());
 	    
-	    // randomly put a themed key into a mob's offhand
-	    if ( world.getRandom().nextInt(100) < DungeonConfig.chanceForThemeKeys && DungeonConfig.themeSettings.size() > 0 && theme < 1 )
+	    // if the mob's offhand slot is occupied then just skip the themed key
+	    if (!offhandKey.isEmpty() && !((MobEntity) mob).hasItemInSlot(EquipmentSlotType.OFFHAND))
 	    {
-		// if the mob's offhand slot is occupied then just skip it
-		if ( !((MobEntity) mob).hasItemInSlot(EquipmentSlotType.OFFHAND))
-		{
-		    int numThemes = DungeonConfig.themeSettings.size();
-		    ItemStack stack = new ItemStack(ItemRegistrar.item_portal_key);
-		    ((ItemPortalKey) (ItemRegistrar.item_portal_key.asItem())).activateKeyLevel1(world.getServer(), stack, world.getRandom().nextInt(numThemes) + 1);
-		    
-		    ((MobEntity) mob).setItemInHand(Hand.OFF_HAND, stack);
-		    ((MobEntity) mob).setDropChance(EquipmentSlotType.OFFHAND, 1.0f);
-		}
+		((MobEntity) mob).setItemInHand(Hand.OFF_HAND, offhandKey);
+		((MobEntity) mob).setDropChance(EquipmentSlotType.OFFHAND, 1.0f);
 	    }
 
 	    // not needed with the new spawn() above
 	    //((MobEntity)mob).onInitialSpawn((IServerWorld) world, world.getDifficultyForLocation(pos), SpawnReason.STRUCTURE, (ILivingEntityData) null, (CompoundNBT) null);
 	}
+	return mob;
     }
 
-    private static void fillChestBelow(BlockPos pos, ResourceLocation lootTable, IWorld world, Random rand)
+    // also remembers where the container is, so the Bell of Secrets doesn't have to search for it
+    private static void setLootTableBelow(BlockPos pos, ResourceLocation lootTable, ServerWorld world, Random rand)
+    {
+	LockableLootTileEntity.setLootTable(world, rand, pos.below(), lootTable);
+	if (world.getBlockEntity(pos.below()) instanceof LockableLootTileEntity)
+	{
+	    DungeonRegistry.get(world.getServer()).addLootContainer(pos.below());
+	}
+    }
+
+    private static void fillChestBelow(BlockPos pos, ResourceLocation lootTable, ServerWorld world, Random rand)
     {
 	world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	faceContainerTowardsAir(world, pos.below());
 
 	// set the loot table
-	LockableLootTileEntity.setLootTable(world, rand, pos.below(), lootTable);
+	setLootTableBelow(pos, lootTable, world, rand);
 	if (!(world.getBlockEntity(pos.below()) instanceof ChestTileEntity))
 	{
 	    DimDungeons.logMessageWarn("DIMDUNGEONS: FAILED TO PLACE CHEST IN DUNGEON. pos = " + pos.getX() + ", " + pos.getZ());
 	}
     }
 
-    private static void fillBarrelBelow(BlockPos pos, ResourceLocation lootTable, IWorld world, Random rand)
+    private static void fillBarrelBelow(BlockPos pos, ResourceLocation lootTable, ServerWorld world, Random rand)
     {
 	world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 
 	// set the loot table
-	LockableLootTileEntity.setLootTable(world, rand, pos.below(), lootTable);
+	setLootTableBelow(pos, lootTable, world, rand);
 	if (!(world.getBlockEntity(pos.below()) instanceof BarrelTileEntity))
 	{
 	    DimDungeons.logMessageWarn("DIMDUNGEONS: FAILED TO PLACE BARREL IN DUNGEON. pos = " + pos.getX() + ", " + pos.getZ());
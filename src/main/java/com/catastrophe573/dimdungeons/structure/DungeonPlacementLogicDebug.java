@@ -11,6 +11,7 @@ import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonRoom;
 import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
 import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.RoomType;
 import com.catastrophe573.dimdungeons.utils.DungeonGenData;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
 import com.catastrophe573.dimdungeons.utils.DungeonUtils;
 
 import net.minecraft.block.BlockState;
@@ -25,7 +26,6 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
 import net.minecraft.nbt.StringNBT;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.state.properties.StructureMode;
 import net.minecraft.tileentity.BarrelTileEntity;
 import net.minecraft.tileentity.ChestTileEntity;
 import net.minecraft.tileentity.DispenserTileEntity;
@@ -35,7 +35,6 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.util.math.MutableBoundingBox;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraft.world.IServerWorld;
@@ -62,7 +61,7 @@ public class DungeonPlacementLogicDebug
 	    DimDungeons.logMessageError("DIMDUNGEONS FATAL ERROR: debug dungeon does not start at " + x + ", " + z);
 	    return false;
 	}
-	DimDungeons.logMessageInfo("DIMDUNGEONS START DEBUG STRUCTURE at " + x + ", " + z);
+	DimDungeons.logMessageInfo("DIMDUNGEONS START DEBUG STRUCTURE at {}, {}", x, z);
 
 	// this is the data structure for an entire dungeon
 	DungeonBuilderLogic dbl = new DungeonBuilderLogic(world.getRandom(), entranceChunkX, entranceChunkZ, DungeonType.BASIC, genData.dungeonTheme);
@@ -187,16 +186,8 @@ public class DungeonPlacementLogicDebug
     // used by the place() function to actually place rooms
     public static boolean putRoomHere(ChunkPos cpos, ServerWorld world, DungeonRoom room, DungeonGenData genData)
     {
-	MinecraftServer minecraftserver = ((World) world).getServer();
-	TemplateManager templatemanager = DungeonUtils.getDungeonWorld(minecraftserver).getStructureManager();
-
-	Template template = templatemanager.get(new ResourceLocation(DimDungeons.RESOURCE_PREFIX + room.structure));
-	PlacementSettings placementsettings = (new PlacementSettings()).setMirror(Mirror.NONE).setRotation(Rotation.NONE).setIgnoreEntities(false).setChunkPos(cpos);
-	placementsettings.setBoundingBox(placementsettings.getBoundingBox());
-
-	placementsettings.setRotation(room.rotation);
+	RoomTemplateCache.CachedRoom template = RoomTemplateCache.get(world.getServer(), DimDungeons.RESOURCE_PREFIX + room.structure);
 	BlockPos position = new BlockPos(cpos.getMinBlockX(), 50, cpos.getMinBlockZ());
-	BlockPos sizeRange = new BlockPos(16, 13, 16);
 
 	if (template == null)
 	{
@@ -204,50 +195,13 @@ public class DungeonPlacementLogicDebug
 	    return false;
 	}
 
-	// next if the structure is to be rotated then it must also be offset, because rotating a structure also moves it
-	if (room.rotation == Rotation.COUNTERCLOCKWISE_90)
-	{
-	    // west: rotate CCW and push +Z
-	    placementsettings.setRotation(Rotation.COUNTERCLOCKWISE_90);
-	    position = position.offset(0, 0, template.getSize().getZ() - 1);
-	}
-	else if (room.rotation == Rotation.CLOCKWISE_90)
-	{
-	    // east rotate CW and push +X
-	    placementsettings.setRotation(Rotation.CLOCKWISE_90);
-	    position = position.offset(template.getSize().getX() - 1, 0, 0);
-	}
-	else if (room.rotation == Rotation.CLOCKWISE_180)
-	{
-	    // south: rotate 180 and push both +X and +Z
-	    placementsettings.setRotation(Rotation.CLOCKWISE_180);
-	    position = position.offset(template.getSize().getX() - 1, 0, template.getSize().getZ() - 1);
-	}
-	else //if (nextRoom.rotation == Rotation.NONE)
-	{
-	    // north: no rotation
-	    placementsettings.setRotation(Rotation.NONE);
-	}
-
-	// formerly: call Template.addBlocksToWorld()
-	DimDungeons.logMessageInfo("Placing a room: " + room.structure);
-	boolean success = template.placeInWorld((IServerWorld) world, position, sizeRange, placementsettings, world.getRandom(), 2);
+	// the cached room is already rotated, and already offset to account for rotating a structure also moving it
+	DimDungeons.logMessageInfo(() -> "Placing a room: " + room.structure);
+	template.placeInWorld(world, position, room.rotation, world.getRandom());
 
-	// handle data blocks - this code block is copied from TemplateStructurePiece
-	//Map<BlockPos, String> map = template.getDataBlocks(position, placementsettings); // 1.12 / 1.13 version
-	//List<Template.BlockInfo> dblocks = template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK, true); // my old 1.14.2 method
-	for (Template.BlockInfo template$blockinfo : template.filterBlocks(position, placementsettings, Blocks.STRUCTURE_BLOCK))
-	{
-	    if (template$blockinfo.nbt != null)
-	    {
-		StructureMode structuremode = StructureMode.valueOf(template$blockinfo.nbt.getString("mode"));
-		if (structuremode == StructureMode.DATA)
-		{
-		    handleDataBlock(template$blockinfo.nbt.getString("metadata"), template$blockinfo.pos, world, world.getRandom(), placementsettings.getBoundingBox(), genData);
-		}
-	    }
-	}
-	return success;
+	// handle data blocks, which were already found and sorted out when the room was cached
+	template.handleDataMarkers(position, room.rotation, (marker, pos) -> handleDataBlock(marker, pos, world, world.getRandom(), genData));
+	return true;
     }
 
     // another debugging function
@@ -265,15 +219,17 @@ public class DungeonPlacementLogicDebug
     }
 
     // resembles TemplateStructurePiece.handleDataMarker()
-    protected static void handleDataBlock(String name, BlockPos pos, ServerWorld world, Random rand, MutableBoundingBox bb, DungeonGenData genData)
+    protected static void handleDataBlock(DataMarker marker, BlockPos pos, ServerWorld world, Random rand, DungeonGenData genData)
     {
-	//DimDungeons.LOGGER.info("DATA BLOCK NAME: " + name);
-
-	if ("ReturnPortal".equals(name))
+	switch (marker)
+	{
+	case RETURN_PORTAL:
 	{
 	    world.setBlock(pos, BlockRegistrar.block_gold_portal.defaultBlockState(), 2); // erase this data block 
+	    DungeonRegistry.get(world.getServer()).addExitPortal(pos);
+	    break;
 	}
-	else if ("BackToEntrance".equals(name))
+	case BACK_TO_ENTRANCE:
 	{
 	    world.setBlock(pos, BlockRegistrar.block_local_teleporter.defaultBlockState(), 2); // erase this data block
 	    TileEntityLocalTeleporter te = (TileEntityLocalTeleporter) world.getBlockEntity(pos);
@@ -284,16 +240,19 @@ public class DungeonPlacementLogicDebug
 		double entranceZ = key.getWarpZ(genData.keyItem);
 		te.setDestination(entranceX, 55.1D, entranceZ, 0.0f, 180.0f);
 	    }
+	    break;
 	}
-	else if ("LockItStoneBrick".equals(name))
+	case LOCK_IT_STONE_BRICK:
 	{
 	    world.setBlock(pos, Blocks.STONE_BRICKS.defaultBlockState(), 2); // erase this data block 
+	    break;
 	}
-	else if ("LockIt".equals(name))
+	case LOCK_IT:
 	{
 	    // do nothing!
+	    break;
 	}
-	else if ("FortuneTeller".equals(name))
+	case FORTUNE_TELLER:
 	{
 	    world.setBlock(pos, Blocks.STONE_BRICKS.defaultBlockState(), 2); // erase this data block 
 	    faceContainerTowardsAir(world, pos.below());
@@ -310,8 +269,9 @@ public class DungeonPlacementLogicDebug
 	    {
 		DimDungeons.logMessageWarn("DIMDUNGEONS TILE ENTITY ERROR: unable to place a fortune teller block.");
 	    }
+	    break;
 	}
-	else if ("ChestLoot1".equals(name))
+	case CHEST_LOOT_1:
 	{
 	    // 80% loot_1, 20% loot_2
 	    int lucky = rand.nextInt(100);
@@ -323,12 +283,14 @@ public class DungeonPlacementLogicDebug
 	    {
 		fillChestBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_2"), world, rand);
 	    }
+	    break;
 	}
-	else if ("ChestLoot2".equals(name))
+	case CHEST_LOOT_2:
 	{
 	    fillChestBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_2"), world, rand);
+	    break;
 	}
-	else if ("ChestLootLucky".equals(name))
+	case CHEST_LOOT_LUCKY:
 	{
 	    // 70% nothing, 30% random minecraft loot table that isn't an end city
 	    int lucky = rand.nextInt(100);
@@ -341,8 +303,9 @@ public class DungeonPlacementLogicDebug
 		world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block 
 		world.setBlock(pos.below(), Blocks.AIR.defaultBlockState(), 2); // and erase the chest below it
 	    }
+	    break;
 	}
-	else if ("SetTrappedLoot".equals(name))
+	case SET_TRAPPED_LOOT:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    ChestTileEntity te = (ChestTileEntity) world.getBlockEntity(pos.below());
@@ -351,8 +314,9 @@ public class DungeonPlacementLogicDebug
 		te.clearContent();
 		te.setLootTable(new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_1"), rand.nextLong());
 	    }
+	    break;
 	}
-	else if ("BarrelLoot1".equals(name))
+	case BARREL_LOOT_1:
 	{
 	    // 80% loot_1, 20% loot_2
 	    int lucky = rand.nextInt(100);
@@ -364,8 +328,9 @@ public class DungeonPlacementLogicDebug
 	    {
 		fillBarrelBelow(pos, new ResourceLocation(DimDungeons.RESOURCE_PREFIX + "chests/chestloot_2"), world, rand);
 	    }
+	    break;
 	}
-	else if ("PlaceL2Key".equals(name))
+	case PLACE_L2_KEY:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    TileEntityPortalKeyhole te = (TileEntityPortalKeyhole) world.getBlockEntity(pos.below());
@@ -378,13 +343,15 @@ public class DungeonPlacementLogicDebug
 		    te.setContents(key);
 		}
 	    }
+	    break;
 	}
-	else if ("SummonWitch".equals(name))
+	case SUMMON_WITCH:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    spawnEnemyHere(pos, "witch", world);
+	    break;
 	}
-	else if ("SummonWaterEnemy".equals(name))
+	case SUMMON_WATER_ENEMY:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    int chance = rand.nextInt(100);
@@ -396,13 +363,15 @@ public class DungeonPlacementLogicDebug
 	    {
 		spawnEnemyHere(pos, "drowned", world);
 	    }
+	    break;
 	}
-	else if ("SummonEnderman".equals(name))
+	case SUMMON_ENDERMAN:
 	{
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
 	    spawnEnemyHere(pos, "enderman", world);
+	    break;
 	}
-	else if ("SummonEnemy1".equals(name))
+	case SUMMON_ENEMY_1:
 	{
 	    // 50% chance of a weak enemy
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
@@ -423,8 +392,9 @@ public class DungeonPlacementLogicDebug
 	    {
 		spawnEnemyHere(pos, "spider", world);
 	    }
+	    break;
 	}
-	else if ("SummonEnemy2".equals(name))
+	case SUMMON_ENEMY_2:
 	{
 	    // 80% chance of a strong enemy
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
@@ -445,11 +415,14 @@ public class DungeonPlacementLogicDebug
 	    {
 		spawnEnemyHere(pos, "pillager", world);
 	    }
+	    break;
 	}
-	else
+	default:
 	{
-	    DimDungeons.logMessageWarn("UNHANDLED DATA BLOCK WITH name = " + name);
+	    // unrecognized names were already logged when the room was cached
 	    world.setBlock(pos, Blocks.AIR.defaultBlockState(), 2); // erase this data block
+	    break;
+	}
 	}
     }
 
@@ -0,0 +1,183 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.Iterator;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.utils.DungeonPlots;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry.DungeonRecord;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry.SpawnPoint;
+import com.catastrophe573.dimdungeons.utils.DungeonUtils;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.server.ServerWorld;
+
+// the SummonEnemy data blocks used to spawn their enemies the moment a dungeon was built, leaving dozens of idle mobs in every dungeon forever
+// now they are only remembered as spawn points, which become enemies when a player walks into their room and go back to sleep after everyone leaves
+public class DungeonSpawnManager
+{
+    // which room players are standing in doesn't change very quickly
+    private static final int CHECK_INTERVAL = 20;
+
+    // put on every enemy spawned from a spawn point, so that it can be matched up again when it dies or is loaded back in
+    public static final String SPAWN_POINT_TAG = DimDungeons.MOD_ID + "_spawn_point";
+
+    // called at the end of every server tick
+    public static void tick(MinecraftServer server)
+    {
+	if (DungeonConfig.enemyDespawnTicks <= 0 || server.getTickCount() % CHECK_INTERVAL != 0)
+	{
+	    return;
+	}
+
+	ServerWorld world = DungeonUtils.getDungeonWorld(server);
+	DungeonRegistry registry = DungeonRegistry.get(server);
+	long now = world.getGameTime();
+
+	// wake up the room each player is standing in, and keep the rooms next to it awake
+	for (ServerPlayerEntity player : world.players())
+	{
+	    if (player.isSpectator())
+	    {
+		continue;
+	    }
+
+	    DungeonRecord record = registry.getDungeon(DungeonPlots.getPlotX(player.blockPosition().getX()), DungeonPlots.getPlotZ(player.blockPosition().getZ()));
+	    if (record == null)
+	    {
+		continue;
+	    }
+
+	    int chunkX = player.blockPosition().getX() >> 4;
+	    int chunkZ = player.blockPosition().getZ() >> 4;
+	    for (SpawnPoint point : record.spawnPoints)
+	    {
+		int dx = Math.abs((point.pos.getX() >> 4) - chunkX);
+		int dz = Math.abs((point.pos.getZ() >> 4) - chunkZ);
+		if (dx > 1 || dz > 1)
+		{
+		    continue;
+		}
+
+		if (point.entity != null)
+		{
+		    point.lastSeen = now;
+		}
+		else if (dx == 0 && dz == 0)
+		{
+		    wake(world, registry, record, point, now);
+		}
+	    }
+	}
+
+	// then put the enemies that nobody has been near for a while back to sleep
+	Iterator<DungeonRecord> it = registry.getAwakeDungeons().iterator();
+	while (it.hasNext())
+	{
+	    DungeonRecord record = it.next();
+	    boolean stillAwake = false;
+	    for (SpawnPoint point : record.spawnPoints)
+	    {
+		if (point.entity == null)
+		{
+		    continue;
+		}
+		if (now - point.lastSeen < DungeonConfig.enemyDespawnTicks)
+		{
+		    stillAwake = true;
+		    continue;
+		}
+
+		// if the enemy's chunk isn't loaded right now then isOrphan() throws it away whenever it is
+		Entity mob = world.getEntity(point.entity);
+		if (mob != null)
+		{
+		    // it wakes up just as hurt as it was, instead of healing by being left alone
+		    if (mob instanceof LivingEntity)
+		    {
+			point.health = ((LivingEntity) mob).getHealth();
+		    }
+		    mob.remove();
+		}
+		point.entity = null;
+		registry.setDirty();
+	    }
+	    if (!stillAwake)
+	    {
+		it.remove();
+	    }
+	}
+    }
+
+    private static void wake(ServerWorld world, DungeonRegistry registry, DungeonRecord record, SpawnPoint point, long now)
+    {
+	Entity mob;
+	if (record.keyLevel == 2)
+	{
+	    mob = DungeonPlacementLogicAdvanced.spawnEnemyHere(point.pos, point.mobId, world);
+	}
+	else
+	{
+	    // the theme might have been removed from the config since this dungeon was built
+	    int theme = record.theme <= DungeonConfig.themeSettings.size() ? record.theme : 0;
+	    mob = DungeonPlacementLogicBasic.spawnEnemyHere(point.pos, point.mobId, world, theme, point.offhandKey.copy());
+	}
+	if (mob == null)
+	{
+	    return;
+	}
+
+	if (point.health > 0 && mob instanceof LivingEntity)
+	{
+	    ((LivingEntity) mob).setHealth(point.health);
+	}
+	mob.getPersistentData().putBoolean(SPAWN_POINT_TAG, true);
+	point.entity = mob.getUUID();
+	point.lastSeen = now;
+	registry.getAwakeDungeons().add(record);
+	registry.setDirty();
+    }
+
+    // killed enemies stay dead, so their spawn point is used up
+    public static void onEnemyDied(Entity mob)
+    {
+	if (!mob.getPersistentData().contains(SPAWN_POINT_TAG))
+	{
+	    return;
+	}
+
+	DungeonRegistry registry = DungeonRegistry.get(mob.getServer());
+	DungeonRecord record = registry.getDungeon(DungeonPlots.getPlotX(mob.blockPosition().getX()), DungeonPlots.getPlotZ(mob.blockPosition().getZ()));
+	if (record != null && record.spawnPoints.removeIf(point -> mob.getUUID().equals(point.entity)))
+	{
+	    registry.setDirty();
+	}
+    }
+
+    // true for an enemy that was put back to sleep while its chunk was unloaded, or whose dungeon is gone
+    public static boolean isOrphan(Entity mob)
+    {
+	if (!mob.getPersistentData().contains(SPAWN_POINT_TAG))
+	{
+	    return false;
+	}
+
+	DungeonRecord record = DungeonRegistry.get(mob.getServer()).getDungeon(DungeonPlots.getPlotX(mob.blockPosition().getX()), DungeonPlots.getPlotZ(mob.blockPosition().getZ()));
+	if (record == null)
+	{
+	    return true;
+	}
+	for (SpawnPoint point : record.spawnPoints)
+	{
+	    if (mob.getUUID().equals(point.entity))
+	    {
+		return false;
+	    }
+	}
+	return true;
+    }
+}
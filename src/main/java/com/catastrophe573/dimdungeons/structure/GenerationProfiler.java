@@ -0,0 +1,304 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// keeps track of how long each part of building a dungeon takes, so that a lag spike can be blamed on the layout, a room, or a data block
+// dungeons are designed on worker threads and built on the server thread, so everything here is safe to call from either
+public class GenerationProfiler
+{
+    public enum Phase
+    {
+	BUILD_DUNGEON("buildDungeon"), // everything DungeonUtils.buildDungeon() does before it returns
+	LAYOUT("layout"), // DungeonBuilderLogic.calculateDungeonShape()
+	TEMPLATE_LOOKUP("templateLookup"), // finding a room in the RoomTemplateCache, which loads it from disk the first time
+	BLOCK_PLACEMENT("blockPlacement"), // writing the blocks, block entities, and entities of one room
+	DATA_MARKERS("dataMarkers"); // every handleDataBlock() call for one room
+
+	public final String name;
+
+	private Phase(String name)
+	{
+	    this.name = name;
+	}
+    }
+
+    // timings are sorted into power of two buckets, so that the slowest calls stand out without keeping every sample
+    public static class Histogram
+    {
+	private final long[] buckets = new long[64];
+	private long count = 0;
+	private long totalNanos = 0;
+	private long maxNanos = 0;
+
+	public synchronized void add(long nanos)
+	{
+	    nanos = Math.max(nanos, 0);
+	    buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+	    count++;
+	    totalNanos += nanos;
+	    maxNanos = Math.max(maxNanos, nanos);
+	}
+
+	public synchronized void clear()
+	{
+	    Arrays.fill(buckets, 0);
+	    count = 0;
+	    totalNanos = 0;
+	    maxNanos = 0;
+	}
+
+	public synchronized long getCount()
+	{
+	    return count;
+	}
+
+	public synchronized long getTotalNanos()
+	{
+	    return totalNanos;
+	}
+
+	public synchronized long getMaxNanos()
+	{
+	    return maxNanos;
+	}
+
+	public synchronized long getAverageNanos()
+	{
+	    return count > 0 ? totalNanos / count : 0;
+	}
+
+	// returns the top of the bucket that the given fraction of all calls fit into, which is at most twice the real value
+	public synchronized long getPercentileNanos(double fraction)
+	{
+	    long wanted = (long) Math.ceil(count * fraction);
+	    long seen = 0;
+	    for (int i = 0; i < buckets.length; i++)
+	    {
+		seen += buckets[i];
+		if (seen >= wanted && seen > 0)
+		{
+		    return Math.min(maxNanos, (2L << i) - 1);
+		}
+	    }
+	    return maxNanos;
+	}
+    }
+
+    // the cost of one room structure, added up over every time it has been placed
+    public static class RoomStats
+    {
+	public final String name;
+	private long placements = 0;
+	private long blocks = 0;
+	private long blockNanos = 0;
+	private long markerNanos = 0;
+
+	RoomStats(String name)
+	{
+	    this.name = name;
+	}
+
+	public synchronized long getPlacements()
+	{
+	    return placements;
+	}
+
+	public synchronized long getBlocks()
+	{
+	    return blocks;
+	}
+
+	public synchronized long getTotalNanos()
+	{
+	    return blockNanos + markerNanos;
+	}
+
+	public synchronized long getAverageNanos()
+	{
+	    return placements > 0 ? (blockNanos + markerNanos) / placements : 0;
+	}
+    }
+
+    private static final Map<Phase, Histogram> phases = new EnumMap<Phase, Histogram>(Phase.class);
+    private static final Map<DataMarker, Histogram> markers = new EnumMap<DataMarker, Histogram>(DataMarker.class);
+    private static final Map<String, RoomStats> rooms = Maps.newConcurrentMap();
+
+    static
+    {
+	for (Phase phase : Phase.values())
+	{
+	    phases.put(phase, new Histogram());
+	}
+	for (DataMarker marker : DataMarker.values())
+	{
+	    markers.put(marker, new Histogram());
+	}
+    }
+
+    public static long start()
+    {
+	return System.nanoTime();
+    }
+
+    // returns how long it has been since start(), so that the same number can be used for more than one statistic
+    public static long record(Phase phase, long startNanos)
+    {
+	long elapsed = System.nanoTime() - startNanos;
+	phases.get(phase).add(elapsed);
+	return elapsed;
+    }
+
+    public static void recordMarker(DataMarker marker, long startNanos)
+    {
+	markers.get(marker).add(System.nanoTime() - startNanos);
+    }
+
+    public static void recordRoomBlocks(String room, int blockCount, long nanos)
+    {
+	RoomStats stats = rooms.computeIfAbsent(room, RoomStats::new);
+	synchronized (stats)
+	{
+	    stats.placements++;
+	    stats.blocks += blockCount;
+	    stats.blockNanos += nanos;
+	}
+    }
+
+    public static void recordRoomMarkers(String room, long nanos)
+    {
+	RoomStats stats = rooms.computeIfAbsent(room, RoomStats::new);
+	synchronized (stats)
+	{
+	    stats.markerNanos += nanos;
+	}
+    }
+
+    public static Histogram getPhase(Phase phase)
+    {
+	return phases.get(phase);
+    }
+
+    public static Histogram getMarker(DataMarker marker)
+    {
+	return markers.get(marker);
+    }
+
+    // most expensive first, by the average cost of placing the room once
+    public static List<RoomStats> getRoomsByCost()
+    {
+	return rooms.values().stream().sorted(Comparator.comparingLong(RoomStats::getAverageNanos).reversed()).collect(Collectors.toList());
+    }
+
+    public static void reset()
+    {
+	phases.values().forEach(Histogram::clear);
+	markers.values().forEach(Histogram::clear);
+	rooms.clear();
+    }
+
+    // one line per phase and per data marker that has been used, then the most expensive rooms, for /dimdungeons stats
+    public static List<String> getSummary(int maxRooms)
+    {
+	List<String> lines = Lists.newArrayList();
+	for (Phase phase : Phase.values())
+	{
+	    lines.add(describe(phase.name, phases.get(phase)));
+	}
+	for (DataMarker marker : DataMarker.values())
+	{
+	    if (markers.get(marker).getCount() > 0)
+	    {
+		lines.add(describe("  " + marker.name().toLowerCase(Locale.ROOT), markers.get(marker)));
+	    }
+	}
+
+	List<RoomStats> sorted = getRoomsByCost();
+	for (int i = 0; i < Math.min(maxRooms, sorted.size()); i++)
+	{
+	    RoomStats room = sorted.get(i);
+	    lines.add(String.format(Locale.ROOT, "%s: %.2f ms average over %d placements, %d blocks each", room.name, room.getAverageNanos() / 1000000.0, room.getPlacements(),
+		    room.getPlacements() > 0 ? room.getBlocks() / room.getPlacements() : 0));
+	}
+	return lines;
+    }
+
+    private static String describe(String name, Histogram histogram)
+    {
+	return String.format(Locale.ROOT, "%s: %d calls, average %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms", name, histogram.getCount(), histogram.getAverageNanos() / 1000000.0,
+		histogram.getPercentileNanos(0.5) / 1000000.0, histogram.getPercentileNanos(0.99) / 1000000.0, histogram.getMaxNanos() / 1000000.0);
+    }
+
+    // one row per phase, data marker, and room, with every time in nanoseconds
+    public static void writeCsv(File file) throws IOException
+    {
+	try (PrintWriter out = new PrintWriter(file, "UTF-8"))
+	{
+	    out.println("kind,name,count,blocks,total_ns,average_ns,p50_ns,p99_ns,max_ns");
+	    for (Phase phase : Phase.values())
+	    {
+		Histogram h = phases.get(phase);
+		out.println("phase," + phase.name + "," + h.getCount() + ",," + h.getTotalNanos() + "," + h.getAverageNanos() + "," + h.getPercentileNanos(0.5) + "," + h.getPercentileNanos(0.99) + "," + h.getMaxNanos());
+	    }
+	    for (DataMarker marker : DataMarker.values())
+	    {
+		Histogram h = markers.get(marker);
+		out.println("marker," + marker.name() + "," + h.getCount() + ",," + h.getTotalNanos() + "," + h.getAverageNanos() + "," + h.getPercentileNanos(0.5) + "," + h.getPercentileNanos(0.99) + "," + h.getMaxNanos());
+	    }
+	    for (RoomStats room : getRoomsByCost())
+	    {
+		out.println("room," + room.name + "," + room.getPlacements() + "," + room.getBlocks() + "," + room.getTotalNanos() + "," + room.getAverageNanos() + ",,,");
+	    }
+	}
+    }
+
+    // the same numbers as writeCsv(), for anything that would rather read JSON
+    public static void writeJson(File file) throws IOException
+    {
+	try (PrintWriter out = new PrintWriter(file, "UTF-8"))
+	{
+	    out.println("{");
+	    out.println("  \"phases\": {");
+	    Phase[] allPhases = Phase.values();
+	    for (int i = 0; i < allPhases.length; i++)
+	    {
+		out.println("    \"" + allPhases[i].name + "\": " + toJson(phases.get(allPhases[i])) + (i < allPhases.length - 1 ? "," : ""));
+	    }
+	    out.println("  },");
+	    out.println("  \"markers\": {");
+	    DataMarker[] allMarkers = DataMarker.values();
+	    for (int i = 0; i < allMarkers.length; i++)
+	    {
+		out.println("    \"" + allMarkers[i].name() + "\": " + toJson(markers.get(allMarkers[i])) + (i < allMarkers.length - 1 ? "," : ""));
+	    }
+	    out.println("  },");
+	    out.println("  \"rooms\": [");
+	    List<RoomStats> sorted = getRoomsByCost();
+	    for (int i = 0; i < sorted.size(); i++)
+	    {
+		RoomStats room = sorted.get(i);
+		out.println("    { \"name\": \"" + room.name + "\", \"placements\": " + room.getPlacements() + ", \"blocks\": " + room.getBlocks() + ", \"total_ns\": " + room.getTotalNanos() + ", \"average_ns\": "
+			+ room.getAverageNanos() + " }" + (i < sorted.size() - 1 ? "," : ""));
+	    }
+	    out.println("  ]");
+	    out.println("}");
+	}
+    }
+
+    private static String toJson(Histogram h)
+    {
+	return "{ \"count\": " + h.getCount() + ", \"total_ns\": " + h.getTotalNanos() + ", \"average_ns\": " + h.getAverageNanos() + ", \"p50_ns\": " + h.getPercentileNanos(0.5) + ", \"p99_ns\": "
+		+ h.getPercentileNanos(0.99) + ", \"max_ns\": " + h.getMaxNanos() + " }";
+    }
+}
@@ -0,0 +1,451 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.inventory.IClearable;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.DoubleNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.NBTUtil;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.LockableLootTileEntity;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.Direction;
+import net.minecraft.util.Mirror;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.Rotation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.world.gen.feature.template.Template;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.common.util.Constants;
+
+// every room is read from its NBT file once and its blocks are rotated ahead of time for all four rotations
+// so placing a room is just a loop over an array, instead of a TemplateManager lookup and a full Template.placeInWorld() every time
+public class RoomTemplateCache
+{
+    // dungeon layouts are designed on worker threads, which look rooms up here too
+    private static final Map<String, CachedRoom> rooms = Maps.newConcurrentMap();
+
+    // called once for every DATA structure block in a room, after the room itself has been placed
+    public interface DataMarkerHandler
+    {
+	void handle(DataMarker marker, BlockPos pos);
+    }
+
+    public static class CachedRoom
+    {
+	public final String name;
+	public final int sizeX;
+	public final int sizeY;
+	public final int sizeZ;
+
+	// these are shared by all four rotations, and air is left out completely since dungeons are only built on empty plots
+	private final short[] paletteIndex;
+	private final CompoundNBT[] blockNbt;
+	private final CompoundNBT[] entityNbt;
+	private final DataMarker[] markers;
+
+	// these are indexed by Rotation.ordinal(), and the offset that keeps a rotated room inside its chunk is already applied
+	private final BlockState[][] palette = new BlockState[4][];
+	private final int[][] positions = new int[4][];
+	private final Vector3d[][] entityPositions = new Vector3d[4][];
+	private final int[][] markerPositions = new int[4][];
+
+	CachedRoom(String name, Template template)
+	{
+	    this.name = name;
+	    sizeX = template.getSize().getX();
+	    sizeY = template.getSize().getY();
+	    sizeZ = template.getSize().getZ();
+
+	    // the public way to read every block out of a Template is to save it, the same format as the file on disk
+	    CompoundNBT data = template.save(new CompoundNBT());
+
+	    // none of the structures in this mod use more than one palette
+	    ListNBT paletteList = data.contains("palettes") ? data.getList("palettes", Constants.NBT.TAG_LIST).getList(0) : data.getList("palette", Constants.NBT.TAG_COMPOUND);
+	    BlockState[] original = new BlockState[paletteList.size()];
+	    for (int i = 0; i < original.length; i++)
+	    {
+		original[i] = NBTUtil.readBlockState(paletteList.getCompound(i));
+	    }
+
+	    ListNBT blockList = data.getList("blocks", Constants.NBT.TAG_COMPOUND);
+	    List<CompoundNBT> solidBlocks = Lists.newArrayList();
+	    for (int i = 0; i < blockList.size(); i++)
+	    {
+		CompoundNBT block = blockList.getCompound(i);
+		if (original[block.getInt("state")].getBlock() != Blocks.AIR)
+		{
+		    solidBlocks.add(block);
+		}
+	    }
+
+	    paletteIndex = new short[solidBlocks.size()];
+	    blockNbt = new CompoundNBT[solidBlocks.size()];
+	    BlockPos[] originalPositions = new BlockPos[solidBlocks.size()];
+	    for (int i = 0; i < solidBlocks.size(); i++)
+	    {
+		CompoundNBT block = solidBlocks.get(i);
+		ListNBT pos = block.getList("pos", Constants.NBT.TAG_INT);
+		originalPositions[i] = new BlockPos(pos.getInt(0), pos.getInt(1), pos.getInt(2));
+		paletteIndex[i] = (short) block.getInt("state");
+		blockNbt[i] = block.contains("nbt") ? block.getCompound("nbt") : null;
+	    }
+
+	    // read the mode and metadata out of every DATA structure block now, instead of every time the room is placed
+	    List<DataMarker> markerList = Lists.newArrayList();
+	    List<BlockPos> markerOriginalPositions = Lists.newArrayList();
+	    for (int i = 0; i < solidBlocks.size(); i++)
+	    {
+		if (original[paletteIndex[i]].getBlock() == Blocks.STRUCTURE_BLOCK && blockNbt[i] != null && "DATA".equals(blockNbt[i].getString("mode")))
+		{
+		    String metadata = blockNbt[i].getString("metadata");
+		    DataMarker marker = DataMarker.fromName(metadata);
+		    if (marker == DataMarker.UNKNOWN)
+		    {
+			DimDungeons.logMessageWarn("UNHANDLED DATA BLOCK WITH name = " + metadata + " in room " + name);
+		    }
+		    markerList.add(marker);
+		    markerOriginalPositions.add(originalPositions[i]);
+		}
+	    }
+	    markers = markerList.toArray(new DataMarker[0]);
+
+	    ListNBT entityList = data.getList("entities", Constants.NBT.TAG_COMPOUND);
+	    entityNbt = new CompoundNBT[entityList.size()];
+	    Vector3d[] originalEntityPositions = new Vector3d[entityList.size()];
+	    for (int i = 0; i < entityList.size(); i++)
+	    {
+		CompoundNBT entity = entityList.getCompound(i);
+		ListNBT pos = entity.getList("pos", Constants.NBT.TAG_DOUBLE);
+		originalEntityPositions[i] = new Vector3d(pos.getDouble(0), pos.getDouble(1), pos.getDouble(2));
+		entityNbt[i] = entity.getCompound("nbt");
+	    }
+
+	    for (Rotation rotation : Rotation.values())
+	    {
+		int r = rotation.ordinal();
+		BlockPos offset = getRotationOffset(rotation);
+
+		palette[r] = new BlockState[original.length];
+		for (int i = 0; i < original.length; i++)
+		{
+		    palette[r][i] = original[i].rotate(rotation);
+		}
+
+		positions[r] = new int[originalPositions.length];
+		for (int i = 0; i < originalPositions.length; i++)
+		{
+		    positions[r][i] = packPos(Template.transform(originalPositions[i], Mirror.NONE, rotation, BlockPos.ZERO).offset(offset));
+		}
+
+		markerPositions[r] = new int[markers.length];
+		for (int i = 0; i < markers.length; i++)
+		{
+		    markerPositions[r][i] = packPos(Template.transform(markerOriginalPositions.get(i), Mirror.NONE, rotation, BlockPos.ZERO).offset(offset));
+		}
+
+		entityPositions[r] = new Vector3d[originalEntityPositions.length];
+		for (int i = 0; i < originalEntityPositions.length; i++)
+		{
+		    entityPositions[r][i] = Template.transform(originalEntityPositions[i], Mirror.NONE, rotation, BlockPos.ZERO).add(offset.getX(), offset.getY(), offset.getZ());
+		}
+	    }
+	}
+
+	// if the structure is to be rotated then it must also be offset, because rotating a structure also moves it
+	private BlockPos getRotationOffset(Rotation rotation)
+	{
+	    switch (rotation)
+	    {
+	    case COUNTERCLOCKWISE_90:
+		return new BlockPos(0, 0, sizeZ - 1); // west: rotate CCW and push +Z
+	    case CLOCKWISE_90:
+		return new BlockPos(sizeX - 1, 0, 0); // east rotate CW and push +X
+	    case CLOCKWISE_180:
+		return new BlockPos(sizeX - 1, 0, sizeZ - 1); // south: rotate 180 and push both +X and +Z
+	    default:
+		return BlockPos.ZERO; // north: no rotation
+	    }
+	}
+
+	// origin is the corner of the room with the lowest coordinates, the same for every rotation
+	public void placeInWorld(ServerWorld world, BlockPos origin, Rotation rotation, Random rand)
+	{
+	    long startNanos = GenerationProfiler.start();
+	    int r = rotation.ordinal();
+	    BlockState[] states = palette[r];
+	    int[] packed = positions[r];
+	    BlockPos.Mutable target = new BlockPos.Mutable();
+
+	    for (int i = 0; i < packed.length; i++)
+	    {
+		setTarget(target, origin, packed[i]);
+		BlockState state = states[paletteIndex[i]];
+		if (blockNbt[i] != null)
+		{
+		    // the same trick Template.placeInWorld() uses to throw away any old container contents
+		    IClearable.tryClear(world.getBlockEntity(target));
+		    world.setBlock(target, Blocks.BARRIER.defaultBlockState(), 20);
+		}
+
+		if (world.setBlock(target, state, 2) && blockNbt[i] != null)
+		{
+		    TileEntity te = world.getBlockEntity(target);
+		    if (te != null)
+		    {
+			CompoundNBT nbt = blockNbt[i].copy();
+			nbt.putInt("x", target.getX());
+			nbt.putInt("y", target.getY());
+			nbt.putInt("z", target.getZ());
+			if (te instanceof LockableLootTileEntity)
+			{
+			    nbt.putLong("LootTableSeed", rand.nextLong());
+			    if (nbt.contains("LootTable", Constants.NBT.TAG_STRING))
+			    {
+				DungeonRegistry.get(world.getServer()).addLootContainer(target);
+			    }
+			}
+			te.load(state, nbt);
+			te.rotate(rotation);
+		    }
+		}
+	    }
+
+	    // then let fences, walls, and redstone connect to each other the way Template.placeInWorld() does
+	    for (int i = 0; i < packed.length; i++)
+	    {
+		setTarget(target, origin, packed[i]);
+		BlockState placed = world.getBlockState(target);
+		BlockState updated = Block.updateFromNeighbourShapes(placed, world, target);
+		if (placed != updated)
+		{
+		    world.setBlock(target, updated, 2 & -2 | 16);
+		}
+		world.blockUpdated(target, updated.getBlock());
+
+		// blocks on the outside of the room may also need to connect to the room next door
+		updateShapeAtEdge(world, target, updated, packed[i]);
+
+		if (blockNbt[i] != null)
+		{
+		    TileEntity te = world.getBlockEntity(target);
+		    if (te != null)
+		    {
+			te.setChanged();
+		    }
+		}
+	    }
+
+	    for (int i = 0; i < entityNbt.length; i++)
+	    {
+		Vector3d pos = entityPositions[r][i].add(origin.getX(), origin.getY(), origin.getZ());
+		CompoundNBT nbt = entityNbt[i].copy();
+		ListNBT posList = new ListNBT();
+		posList.add(DoubleNBT.valueOf(pos.x));
+		posList.add(DoubleNBT.valueOf(pos.y));
+		posList.add(DoubleNBT.valueOf(pos.z));
+		nbt.put("Pos", posList);
+		nbt.remove("UUID");
+
+		Entity entity = null;
+		try
+		{
+		    entity = EntityType.create(nbt, world).orElse(null);
+		}
+		catch (Exception e)
+		{
+		    DimDungeons.logMessageWarn("DIMDUNGEONS: unable to create an entity in room " + name + ": " + e.getMessage());
+		}
+		if (entity != null)
+		{
+		    float yaw = entity.mirror(Mirror.NONE);
+		    yaw = yaw + (entity.yRot - entity.rotate(rotation));
+		    entity.moveTo(pos.x, pos.y, pos.z, yaw, entity.xRot);
+		    world.addFreshEntityWithPassengers(entity);
+		}
+	    }
+
+	    long nanos = GenerationProfiler.record(GenerationProfiler.Phase.BLOCK_PLACEMENT, startNanos);
+	    GenerationProfiler.recordRoomBlocks(name, paletteIndex.length, nanos);
+
+	    // checked here so that nothing gets boxed for every room while the events are turned off
+	    if (DimDungeons.isGenerationEventsEnabled())
+	    {
+		DimDungeons.logGenerationEvent("room_placed", "room", name, "x", origin.getX(), "y", origin.getY(), "z", origin.getZ(), "blocks", paletteIndex.length, "ns", nanos);
+	    }
+	}
+
+	private void updateShapeAtEdge(ServerWorld world, BlockPos pos, BlockState state, int packed)
+	{
+	    int x = packed & 255;
+	    int z = (packed >> 16) & 255;
+	    int maxX = Math.max(sizeX, sizeZ) - 1;
+	    int maxZ = maxX;
+
+	    for (Direction dir : Direction.Plane.HORIZONTAL)
+	    {
+		if ((dir == Direction.WEST && x == 0) || (dir == Direction.EAST && x == maxX) || (dir == Direction.NORTH && z == 0) || (dir == Direction.SOUTH && z == maxZ))
+		{
+		    BlockPos neighbor = pos.relative(dir);
+		    BlockState neighborState = world.getBlockState(neighbor);
+		    BlockState updated = neighborState.updateShape(dir.getOpposite(), state, world, neighbor, pos);
+		    if (neighborState != updated)
+		    {
+			world.setBlock(neighbor, updated, 2 & -2);
+		    }
+		}
+	    }
+	}
+
+	// the replacement for scanning the template with filterBlocks(Blocks.STRUCTURE_BLOCK) after placing it
+	public void handleDataMarkers(BlockPos origin, Rotation rotation, DataMarkerHandler handler)
+	{
+	    long startNanos = GenerationProfiler.start();
+	    int[] packed = markerPositions[rotation.ordinal()];
+	    for (int i = 0; i < markers.length; i++)
+	    {
+		BlockPos.Mutable target = new BlockPos.Mutable();
+		setTarget(target, origin, packed[i]);
+		long markerNanos = GenerationProfiler.start();
+		handler.handle(markers[i], target.immutable());
+		GenerationProfiler.recordMarker(markers[i], markerNanos);
+	    }
+	    GenerationProfiler.recordRoomMarkers(name, GenerationProfiler.record(GenerationProfiler.Phase.DATA_MARKERS, startNanos));
+	}
+
+	// same idea as Template.filterBlocks() but without walking through the whole palette
+	public List<Template.BlockInfo> filterBlocks(BlockPos origin, Rotation rotation, Block block)
+	{
+	    List<Template.BlockInfo> found = Lists.newArrayList();
+	    int r = rotation.ordinal();
+	    for (int i = 0; i < positions[r].length; i++)
+	    {
+		BlockState state = palette[r][paletteIndex[i]];
+		if (state.getBlock() == block)
+		{
+		    BlockPos.Mutable target = new BlockPos.Mutable();
+		    setTarget(target, origin, positions[r][i]);
+		    found.add(new Template.BlockInfo(target.immutable(), state, blockNbt[i]));
+		}
+	    }
+	    return found;
+	}
+    }
+
+    // rooms are at most 32x13x32, so a relative position fits easily into one int
+    private static int packPos(BlockPos pos)
+    {
+	return (pos.getX() & 255) | ((pos.getY() & 255) << 8) | ((pos.getZ() & 255) << 16);
+    }
+
+    private static void setTarget(BlockPos.Mutable target, BlockPos origin, int packed)
+    {
+	target.set(origin.getX() + (packed & 255), origin.getY() + ((packed >> 8) & 255), origin.getZ() + ((packed >> 16) & 255));
+    }
+
+    // called whenever the config is loaded, since that is what decides which rooms are in use
+    public static void rebuild(MinecraftServer server)
+    {
+	rooms.clear();
+
+	Set<String> names = Sets.newLinkedHashSet();
+	addRoomNames(names, DungeonConfig.basicEntrances);
+	addRoomNames(names, DungeonConfig.basicFourways);
+	addRoomNames(names, DungeonConfig.basicThreeways);
+	addRoomNames(names, DungeonConfig.basicHallways);
+	addRoomNames(names, DungeonConfig.basicCorners);
+	addRoomNames(names, DungeonConfig.basicEnds);
+	addRoomNames(names, DungeonConfig.advancedEntrances);
+	addRoomNames(names, DungeonConfig.advancedFourways);
+	addRoomNames(names, DungeonConfig.advancedThreeways);
+	addRoomNames(names, DungeonConfig.advancedHallways);
+	addRoomNames(names, DungeonConfig.advancedCorners);
+	addRoomNames(names, DungeonConfig.advancedEnds);
+	addRoomNames(names, DungeonConfig.advancedLarge);
+	for (DungeonConfig.ThemeStructure theme : DungeonConfig.themeSettings)
+	{
+	    addRoomNames(names, theme.themeEntrances);
+	    addRoomNames(names, theme.themeFourways);
+	    addRoomNames(names, theme.themeThreeways);
+	    addRoomNames(names, theme.themeHallways);
+	    addRoomNames(names, theme.themeCorners);
+	    addRoomNames(names, theme.themeEnds);
+	}
+
+	long start = System.currentTimeMillis();
+	for (String name : names)
+	{
+	    if (load(server, name) == null)
+	    {
+		DimDungeons.logMessageWarn("DIMDUNGEONS: the config mentions a room that does not exist (" + name + ")");
+	    }
+	}
+	DimDungeons.logMessageInfo("DIMDUNGEONS: cached " + rooms.size() + " rooms in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void addRoomNames(Set<String> names, @Nullable List<? extends List<String>> pools)
+    {
+	if (pools == null)
+	{
+	    return;
+	}
+	for (List<String> pool : pools)
+	{
+	    names.addAll(pool);
+	}
+    }
+
+    // returns null if the structure does not exist, rooms that were not in the config are loaded the first time they are asked for
+    @Nullable
+    public static CachedRoom get(MinecraftServer server, String name)
+    {
+	long startNanos = GenerationProfiler.start();
+	CachedRoom room = rooms.get(name);
+	if (room == null)
+	{
+	    room = load(server, name);
+	}
+	GenerationProfiler.record(GenerationProfiler.Phase.TEMPLATE_LOOKUP, startNanos);
+	return room;
+    }
+
+    // safe to call from any thread, but returns null instead of loading anything since only the server thread may use the TemplateManager
+    @Nullable
+    public static CachedRoom getIfCached(String name)
+    {
+	return rooms.get(name);
+    }
+
+    @Nullable
+    private static CachedRoom load(MinecraftServer server, String name)
+    {
+	Template template = server.getStructureManager().get(new ResourceLocation(name));
+	if (template == null)
+	{
+	    return null;
+	}
+
+	CachedRoom room = new CachedRoom(name, template);
+	rooms.put(name, room);
+	return room;
+    }
+}
@@ -0,0 +1,91 @@
+package com.catastrophe573.dimdungeons.utils;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.ITag;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.registries.ForgeRegistries;
+
+// the block lists from the config, which may contain both block ids and #tags, compiled into one bit per BlockState
+// so the block protection events only have to look up one bit, no matter how long the lists in a modpack are
+public class BlockProtectionPolicy
+{
+    private static volatile BitSet breakable = new BitSet();
+    private static volatile BitSet notInteractable = new BitSet();
+    private static volatile BitSet explodable = new BitSet();
+
+    public static boolean canBreak(BlockState state)
+    {
+	return breakable.get(Block.getId(state));
+    }
+
+    public static boolean canInteract(BlockState state)
+    {
+	return !notInteractable.get(Block.getId(state));
+    }
+
+    public static boolean canExplode(BlockState state)
+    {
+	return explodable.get(Block.getId(state));
+    }
+
+    // called when the server config is reloaded and whenever tags are reloaded, since either one can change what is in these lists
+    public static void rebuild(boolean tagsLoaded)
+    {
+	breakable = compile(DungeonConfig.blockBreakWhitelist, tagsLoaded);
+	notInteractable = compile(DungeonConfig.blockInteractBlacklist, tagsLoaded);
+	explodable = compile(DungeonConfig.blockExplosionWhitelist, tagsLoaded);
+    }
+
+    private static BitSet compile(List<String> entries, boolean tagsLoaded)
+    {
+	BitSet states = new BitSet(Block.BLOCK_STATE_REGISTRY.size());
+	for (String entry : entries)
+	{
+	    if (entry.startsWith("#"))
+	    {
+		// tags aren't loaded until the server starts, so they can't be found yet when the config is first read
+		ResourceLocation tagName = ResourceLocation.tryParse(entry.substring(1));
+		ITag<Block> tag = tagName == null ? null : BlockTags.getAllTags().getTag(tagName);
+		if (tag == null)
+		{
+		    if (tagsLoaded)
+		    {
+			DimDungeons.logMessageWarn("dimdungeons: blacklist/whitelist could not find block tag " + entry);
+		    }
+		    continue;
+		}
+		for (Block block : tag.getValues())
+		{
+		    addAllStates(states, block);
+		}
+	    }
+	    else
+	    {
+		ResourceLocation blockName = ResourceLocation.tryParse(entry);
+		if (blockName == null || !ForgeRegistries.BLOCKS.containsKey(blockName))
+		{
+		    DimDungeons.logMessageWarn("dimdungeons: blacklist/whitelist could not find block " + entry);
+		    continue;
+		}
+		addAllStates(states, ForgeRegistries.BLOCKS.getValue(blockName));
+	    }
+	}
+	return states;
+    }
+
+    private static void addAllStates(BitSet states, Block block)
+    {
+	for (BlockState state : block.getStateDefinition().getPossibleStates())
+	{
+	    states.set(Block.getId(state));
+	}
+    }
+}
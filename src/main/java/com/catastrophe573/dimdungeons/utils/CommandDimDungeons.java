@@ -1,10 +1,15 @@
 package com.catastrophe573.dimdungeons.utils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.dimension.TeleportScheduler;
 import com.catastrophe573.dimdungeons.item.ItemPortalKey;
 import com.catastrophe573.dimdungeons.item.ItemRegistrar;
+import com.catastrophe573.dimdungeons.structure.GenerationProfiler;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
@@ -21,6 +26,7 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvents;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.util.text.TextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
 
@@ -67,6 +73,66 @@ public class CommandDimDungeons
 
 	// register the /gendungeon cheat
 	dispatcher.register(gendungeonArgumentBuilder);
+
+	// make and register /dimdungeons stats, which shows how long each part of building dungeons has taken and which rooms are the most expensive
+	// and /dimdungeons stats teleport, which shows how long players have been waiting for chunks to load when using portals
+	dispatcher.register(Commands.literal("dimdungeons").requires((cmd) ->
+	{
+	    return cmd.hasPermission(2);
+	}).then(Commands.literal("stats").executes((cmd) ->
+	{
+	    return showStats(cmd);
+	}).then(Commands.literal("reset").executes((cmd) ->
+	{
+	    GenerationProfiler.reset();
+	    cmd.getSource().sendSuccess(new TranslationTextComponent("commands.dimdungeons.stats.reset"), true);
+	    return 1;
+	})).then(Commands.literal("teleport").executes((cmd) ->
+	{
+	    cmd.getSource().sendSuccess(new StringTextComponent(TeleportScheduler.getStatsSummary()), false);
+	    return 1;
+	})).then(Commands.literal("dump").then(Commands.literal("csv").executes((cmd) ->
+	{
+	    return dumpStats(cmd, "csv");
+	})).then(Commands.literal("json").executes((cmd) ->
+	{
+	    return dumpStats(cmd, "json");
+	})))));
+    }
+
+    private static int showStats(CommandContext<CommandSource> cmd)
+    {
+	for (String line : GenerationProfiler.getSummary(5))
+	{
+	    cmd.getSource().sendSuccess(new StringTextComponent(line), false);
+	}
+	return 1;
+    }
+
+    // written to the folder the server was started in, next to server.properties
+    private static int dumpStats(CommandContext<CommandSource> cmd, String format)
+    {
+	File file = cmd.getSource().getServer().getFile(DimDungeons.MOD_ID + "-stats." + format);
+	try
+	{
+	    if ("csv".equals(format))
+	    {
+		GenerationProfiler.writeCsv(file);
+	    }
+	    else
+	    {
+		GenerationProfiler.writeJson(file);
+	    }
+	}
+	catch (IOException e)
+	{
+	    DimDungeons.logMessageError("DIMDUNGEONS ERROR: unable to write " + file + ": " + e.getMessage());
+	    cmd.getSource().sendFailure(new TranslationTextComponent("commands.dimdungeons.stats.dump.failed", file.getName()));
+	    return 0;
+	}
+
+	cmd.getSource().sendSuccess(new TranslationTextComponent("commands.dimdungeons.stats.dump.success", file.getAbsolutePath()), true);
+	return 1;
     }
 
     private static int giveKey(CommandContext<CommandSource> cmd, Collection<ServerPlayerEntity> targets, String type, int theme) throws CommandSyntaxException
@@ -85,12 +151,12 @@ public class CommandDimDungeons
 	    }
 	    else if ("basic".equals(type))
 	    {
-		((ItemPortalKey) (ItemRegistrar.item_portal_key.asItem())).activateKeyLevel1(cmd.getSource().getServer(), stack, theme);
+		((ItemPortalKey) (ItemRegistrar.item_portal_key.asItem())).activateKeyLevel1(cmd.getSource().getServer(), stack, theme, true);
 		keyName = new TranslationTextComponent("item.dimdungeons.item_portal_key_basic");
 	    }
 	    else if ("advanced".equals(type))
 	    {
-		((ItemPortalKey) (ItemRegistrar.item_portal_key.asItem())).activateKeyLevel2(cmd.getSource().getServer(), stack);
+		((ItemPortalKey) (ItemRegistrar.item_portal_key.asItem())).activateKeyLevel2(cmd.getSource().getServer(), stack, true);
 		keyName = new TranslationTextComponent("item.dimdungeons.item_portal_key_advanced");
 	    }
 	    else
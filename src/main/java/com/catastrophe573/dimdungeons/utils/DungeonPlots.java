@@ -0,0 +1,65 @@
+package com.catastrophe573.dimdungeons.utils;
+
+import java.util.Random;
+
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.item.ItemPortalKey;
+
+import net.minecraft.util.math.ChunkPos;
+
+// how the plot numbers saved on keys turn into block coordinates and region files, so that keys, pearls, the registry, and the builder can never disagree
+public class DungeonPlots
+{
+    // a region file holds 32x32 chunks, which is two plots in each direction
+    public static final int PLOTS_PER_REGION = 512 / ItemPortalKey.BLOCKS_APART_PER_DUNGEON;
+
+    // which plot a block is in, the same numbers as dest_x and dest_z on a key
+    public static int getPlotX(long blockX)
+    {
+	return (int) Math.floorDiv(blockX, (long) ItemPortalKey.BLOCKS_APART_PER_DUNGEON);
+    }
+
+    public static int getPlotZ(long blockZ)
+    {
+	return (int) Math.floorDiv(blockZ, (long) ItemPortalKey.BLOCKS_APART_PER_DUNGEON);
+    }
+
+    // the corner of the plot that the dungeon is built from
+    public static long getTopLeftX(int plotX)
+    {
+	return (long) plotX * ItemPortalKey.BLOCKS_APART_PER_DUNGEON;
+    }
+
+    public static long getTopLeftZ(int plotZ)
+    {
+	return (long) plotZ * ItemPortalKey.BLOCKS_APART_PER_DUNGEON;
+    }
+
+    // where players arrive, centered on the two-block-wide return portal
+    public static float getEntranceX(int plotX)
+    {
+	return (plotX * ItemPortalKey.BLOCKS_APART_PER_DUNGEON) + ItemPortalKey.ENTRANCE_OFFSET_X;
+    }
+
+    public static float getEntranceZ(int plotZ)
+    {
+	return (plotZ * ItemPortalKey.BLOCKS_APART_PER_DUNGEON) + ItemPortalKey.ENTRANCE_OFFSET_Z;
+    }
+
+    // the same numbers as the r.x.z.mca file name
+    public static long getRegionKey(int plotX, int plotZ)
+    {
+	return ChunkPos.asLong(Math.floorDiv(plotX, PLOTS_PER_REGION), Math.floorDiv(plotZ, PLOTS_PER_REGION));
+    }
+
+    // picks a plot number from 0 up to the limit for a new key
+    // in one dungeon per region mode only the first plot of each region is used, so every dungeon can be backed up, reset, or read as a single file
+    public static int getRandomPlot(Random rand, int limit)
+    {
+	if (DungeonConfig.oneDungeonPerRegion)
+	{
+	    return rand.nextInt(Math.max(1, limit / PLOTS_PER_REGION)) * PLOTS_PER_REGION;
+	}
+	return rand.nextInt(limit);
+    }
+}
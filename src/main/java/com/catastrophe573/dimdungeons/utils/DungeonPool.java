@@ -0,0 +1,213 @@
+package com.catastrophe573.dimdungeons.utils;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.item.ItemPortalKey;
+import com.catastrophe573.dimdungeons.item.ItemRegistrar;
+import com.catastrophe573.dimdungeons.structure.DungeonBuildJob;
+import com.catastrophe573.dimdungeons.structure.DungeonBuildScheduler;
+import com.catastrophe573.dimdungeons.structure.DungeonPlacementLogicAdvanced;
+import com.catastrophe573.dimdungeons.structure.DungeonPlacementLogicBasic;
+import com.google.common.collect.Maps;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+
+// dungeons that were built ahead of time during quiet server ticks, so that using a key doesn't have to build anything
+public class DungeonPool extends WorldSavedData
+{
+    public static final String DATA_NAME = DimDungeons.MOD_ID + "_pool";
+
+    // plot coordinates are stored the same way as dest_x and dest_z on a key
+    private final Map<String, ArrayDeque<ImmutablePair<Integer, Integer>>> readyPlots = Maps.newHashMap();
+
+    public DungeonPool()
+    {
+	super(DATA_NAME);
+    }
+
+    // the pool is saved along with the dungeon dimension
+    public static DungeonPool get(MinecraftServer server)
+    {
+	return DungeonUtils.getDungeonWorld(server).getDataStorage().computeIfAbsent(DungeonPool::new, DATA_NAME);
+    }
+
+    // unthemed level 1 keys, level 1 keys of each theme, and level 2 keys all get their own pool
+    public static String getPoolName(int keyLevel, int theme)
+    {
+	if (keyLevel == 2)
+	{
+	    return "advanced";
+	}
+	if (theme > 0)
+	{
+	    return "theme_" + theme;
+	}
+	return "basic";
+    }
+
+    // returns null if there is nothing ready, in which case the key should pick random coordinates like it always did
+    @Nullable
+    public static ImmutablePair<Integer, Integer> takeReadyPlot(MinecraftServer server, int keyLevel, int theme)
+    {
+	if (server == null || DungeonConfig.dungeonPoolSize < 1)
+	{
+	    return null;
+	}
+
+	DungeonPool pool = get(server);
+	ArrayDeque<ImmutablePair<Integer, Integer>> plots = pool.readyPlots.get(getPoolName(keyLevel, theme));
+	if (plots == null || plots.isEmpty())
+	{
+	    return null;
+	}
+
+	pool.setDirty();
+	return plots.pollFirst();
+    }
+
+    public int getReadyCount(String poolName)
+    {
+	ArrayDeque<ImmutablePair<Integer, Integer>> plots = readyPlots.get(poolName);
+	return plots == null ? 0 : plots.size();
+    }
+
+    // a dungeon that is waiting in a pool hasn't been visited by anyone yet, but that doesn't mean it was abandoned
+    public boolean isReadyPlot(int destX, int destZ)
+    {
+	for (ArrayDeque<ImmutablePair<Integer, Integer>> plots : readyPlots.values())
+	{
+	    for (ImmutablePair<Integer, Integer> plot : plots)
+	    {
+		if (plot.getLeft() == destX && plot.getRight() == destZ)
+		{
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    protected void addReadyPlot(String poolName, int destX, int destZ)
+    {
+	readyPlots.computeIfAbsent(poolName, k -> new ArrayDeque<ImmutablePair<Integer, Integer>>()).addLast(new ImmutablePair<Integer, Integer>(destX, destZ));
+	setDirty();
+	DimDungeons.logMessageInfo("DIMDUNGEONS: pre-built a dungeon for the {} pool at ({}, {})", poolName, destX, destZ);
+    }
+
+    // called by the DungeonBuildScheduler when it has nothing better to do
+    public static void startNextDungeon(MinecraftServer server)
+    {
+	DungeonPool pool = get(server);
+
+	// find a pool that isn't full, checking the unthemed pools first
+	int keyLevel = 0;
+	int theme = 0;
+	if (pool.getReadyCount(getPoolName(1, 0)) < DungeonConfig.dungeonPoolSize)
+	{
+	    keyLevel = 1;
+	}
+	else if (pool.getReadyCount(getPoolName(2, 0)) < DungeonConfig.dungeonPoolSize)
+	{
+	    keyLevel = 2;
+	}
+	else
+	{
+	    for (int i = 1; i <= DungeonConfig.themeSettings.size(); i++)
+	    {
+		if (pool.getReadyCount(getPoolName(1, i)) < DungeonConfig.dungeonPoolSize)
+		{
+		    keyLevel = 1;
+		    theme = i;
+		    break;
+		}
+	    }
+	}
+	if (keyLevel == 0)
+	{
+	    return; // every pool is full
+	}
+
+	// pick coordinates exactly the same way that activating a key would
+	ServerWorld dungeonWorld = DungeonUtils.getDungeonWorld(server);
+	int generation_limit = DungeonUtils.getLimitOfWorldBorder(server);
+	int destX = DungeonPlots.getRandomPlot(dungeonWorld.getRandom(), generation_limit);
+	int destZ = DungeonPlots.getRandomPlot(dungeonWorld.getRandom(), generation_limit) * (keyLevel == 2 ? -1 : 1);
+
+	// build a fake key to drive the normal generation code, the same as the /gendungeon command
+	ItemStack fakeKey = new ItemStack(ItemRegistrar.item_portal_key);
+	ItemPortalKey key = (ItemPortalKey) fakeKey.getItem();
+	key.forceCoordinates(fakeKey, destX, destZ, theme);
+	long buildX = key.getDungeonTopLeftX(fakeKey);
+	long buildZ = key.getDungeonTopLeftZ(fakeKey);
+	if (DungeonUtils.dungeonAlreadyExistsHere(dungeonWorld, buildX + (8 * 16), buildZ + (11 * 16)))
+	{
+	    return; // just try again next tick
+	}
+
+	// the exit portal gets reprogrammed when a player actually uses the key, so for now it just leads to world spawn
+	DungeonGenData genData = DungeonGenData.Create().setKeyItem(fakeKey).setReturnPoint(server.overworld().getSharedSpawnPos(), "minecraft:overworld").setTheme(theme);
+	DungeonBuildJob job = keyLevel == 2 ? DungeonPlacementLogicAdvanced.plan(dungeonWorld, buildX, buildZ, genData) : DungeonPlacementLogicBasic.plan(dungeonWorld, buildX, buildZ, genData);
+	if (job == null)
+	{
+	    return;
+	}
+
+	// claim the plot now so that nothing else tries to build here while this dungeon is being built
+	DungeonRegistry.get(server).addDungeon(DungeonPlots.getPlotX(buildX), DungeonPlots.getPlotZ(buildZ), keyLevel, theme);
+
+	String poolName = getPoolName(keyLevel, theme);
+	job.whenFinished(() -> pool.addReadyPlot(poolName, destX, destZ));
+	DungeonBuildScheduler.enqueueBackground(job);
+    }
+
+    @Override
+    public void load(CompoundNBT nbt)
+    {
+	readyPlots.clear();
+	CompoundNBT pools = nbt.getCompound("pools");
+	for (String poolName : pools.getAllKeys())
+	{
+	    ArrayDeque<ImmutablePair<Integer, Integer>> plots = new ArrayDeque<ImmutablePair<Integer, Integer>>();
+	    ListNBT list = pools.getList(poolName, Constants.NBT.TAG_COMPOUND);
+	    for (int i = 0; i < list.size(); i++)
+	    {
+		CompoundNBT plot = list.getCompound(i);
+		plots.addLast(new ImmutablePair<Integer, Integer>(plot.getInt("x"), plot.getInt("z")));
+	    }
+	    readyPlots.put(poolName, plots);
+	}
+    }
+
+    @Override
+    public CompoundNBT save(CompoundNBT nbt)
+    {
+	CompoundNBT pools = new CompoundNBT();
+	for (Map.Entry<String, ArrayDeque<ImmutablePair<Integer, Integer>>> entry : readyPlots.entrySet())
+	{
+	    ListNBT list = new ListNBT();
+	    for (ImmutablePair<Integer, Integer> plotPos : entry.getValue())
+	    {
+		CompoundNBT plot = new CompoundNBT();
+		plot.putInt("x", plotPos.getLeft());
+		plot.putInt("z", plotPos.getRight());
+		list.add(plot);
+	    }
+	    pools.put(entry.getKey(), list);
+	}
+	nbt.put("pools", pools);
+	return nbt;
+    }
+}
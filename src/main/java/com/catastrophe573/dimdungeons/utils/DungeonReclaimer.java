@@ -0,0 +1,188 @@
+package com.catastrophe573.dimdungeons.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.catastrophe573.dimdungeons.DungeonConfig;
+import com.catastrophe573.dimdungeons.utils.DungeonRegistry.DungeonRecord;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.DimensionType;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.FolderName;
+
+// every used key leaves a dungeon behind forever, so dungeons that nobody has visited in a long time are deleted to keep the dimension from growing without limit
+// a region file holds four plots, and the whole file is deleted once all of the dungeons in it have been abandoned, which puts those plots back up for grabs
+public class DungeonReclaimer
+{
+    // which plot players are standing in doesn't change very quickly
+    private static final int CHECK_INTERVAL = 20;
+
+    // how many dungeons are looked at per tick, and how long to wait before looking at all of them again
+    private static final int SCAN_BATCH = 64;
+    private static final int SCAN_INTERVAL = 20 * 60 * 5;
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    // the dungeons that are left to be looked at in the current pass
+    private static final List<DungeonRecord> scanQueue = Lists.newArrayList();
+    private static int nextScanTick = 0;
+
+    // region files that were deleted before the dungeon dimension was loaded, to be taken out of the registry once it is
+    private static final Set<Long> deletedRegions = Sets.newHashSet();
+
+    // called at the end of every server tick
+    public static void tick(MinecraftServer server)
+    {
+	boolean checkVisits = server.getTickCount() % CHECK_INTERVAL == 0;
+	boolean scanning = DungeonConfig.reclaimDungeonsAfterDays > 0 && (!scanQueue.isEmpty() || server.getTickCount() >= nextScanTick);
+	if (!checkVisits && !scanning)
+	{
+	    return;
+	}
+
+	DungeonRegistry registry = DungeonRegistry.get(server);
+	if (checkVisits)
+	{
+	    recordVisits(DungeonUtils.getDungeonWorld(server), registry);
+	}
+	// dungeons built before the registry existed have no record, so nothing in a world like that can be proven abandoned
+	if (!scanning || !registry.isComplete())
+	{
+	    return;
+	}
+
+	if (scanQueue.isEmpty())
+	{
+	    scanQueue.addAll(registry.getAllDungeons());
+	    nextScanTick = server.getTickCount() + SCAN_INTERVAL;
+	}
+
+	long cutoff = System.currentTimeMillis() - DungeonConfig.reclaimDungeonsAfterDays * MILLIS_PER_DAY;
+	DungeonPool pool = DungeonPool.get(server);
+	for (int i = 0; i < SCAN_BATCH && !scanQueue.isEmpty(); i++)
+	{
+	    DungeonRecord record = scanQueue.remove(scanQueue.size() - 1);
+	    long region = DungeonPlots.getRegionKey(record.plotX, record.plotZ);
+	    if (record.lastVisited < cutoff && !registry.isReclaiming(region) && isRegionAbandoned(registry, pool, region, cutoff))
+	    {
+		registry.markForReclaim(region);
+		DimDungeons.logMessageInfo("DIMDUNGEONS: every dungeon in region " + ChunkPos.getX(region) + ", " + ChunkPos.getZ(region) + " has been abandoned, it will be deleted when the server restarts.");
+	    }
+	}
+    }
+
+    private static void recordVisits(ServerWorld world, DungeonRegistry registry)
+    {
+	long now = System.currentTimeMillis();
+	for (ServerPlayerEntity player : world.players())
+	{
+	    DungeonRecord record = registry.getDungeon(DungeonPlots.getPlotX(player.blockPosition().getX()), DungeonPlots.getPlotZ(player.blockPosition().getZ()));
+	    if (record != null)
+	    {
+		record.lastVisited = now;
+		registry.cancelReclaim(DungeonPlots.getRegionKey(record.plotX, record.plotZ));
+		registry.setDirty();
+	    }
+	}
+    }
+
+    private static boolean isRegionAbandoned(DungeonRegistry registry, DungeonPool pool, long region, long cutoff)
+    {
+	int firstPlotX = ChunkPos.getX(region) * DungeonPlots.PLOTS_PER_REGION;
+	int firstPlotZ = ChunkPos.getZ(region) * DungeonPlots.PLOTS_PER_REGION;
+	for (int plotX = firstPlotX; plotX < firstPlotX + DungeonPlots.PLOTS_PER_REGION; plotX++)
+	{
+	    for (int plotZ = firstPlotZ; plotZ < firstPlotZ + DungeonPlots.PLOTS_PER_REGION; plotZ++)
+	    {
+		DungeonRecord record = registry.getDungeon(plotX, plotZ);
+		if (record != null && (record.lastVisited >= cutoff || pool.isReadyPlot(plotX, plotZ)))
+		{
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    private static File getDimensionFolder(MinecraftServer server)
+    {
+	return DimensionType.getStorageFolder(DimDungeons.DUNGEON_DIMENSION, server.getWorldPath(FolderName.ROOT).toFile());
+    }
+
+    // called before any world is loaded, because once the dungeon dimension has opened a region file it keeps it open until the server stops
+    // the registry can't be loaded the normal way yet, so its file is read directly just to find out which regions to delete
+    public static void deleteReclaimedRegions(MinecraftServer server)
+    {
+	deletedRegions.clear();
+	File dimensionFolder = getDimensionFolder(server);
+	File registryFile = new File(dimensionFolder, "data/" + DungeonRegistry.DATA_NAME + ".dat");
+	if (!registryFile.exists())
+	{
+	    return;
+	}
+
+	CompoundNBT data;
+	try
+	{
+	    data = CompressedStreamTools.readCompressed(registryFile).getCompound("data");
+	}
+	catch (IOException e)
+	{
+	    DimDungeons.logMessageError("DIMDUNGEONS ERROR: unable to read " + registryFile + ", no dungeons will be reclaimed. " + e.getMessage());
+	    return;
+	}
+
+	// the same check as tick(), in case an older version marked regions in a world that still has unregistered dungeons
+	if (!data.getBoolean("complete"))
+	{
+	    return;
+	}
+
+	for (long region : data.getLongArray("reclaim"))
+	{
+	    String fileName = "r." + ChunkPos.getX(region) + "." + ChunkPos.getZ(region) + ".mca";
+	    File regionFile = new File(dimensionFolder, "region/" + fileName);
+	    if (regionFile.exists() && !regionFile.delete())
+	    {
+		DimDungeons.logMessageWarn("DIMDUNGEONS: unable to delete " + regionFile + ", it will be tried again next time.");
+		continue;
+	    }
+
+	    // the dungeon dimension doesn't have any points of interest, but just in case
+	    new File(dimensionFolder, "poi/" + fileName).delete();
+	    deletedRegions.add(region);
+	}
+
+	if (!deletedRegions.isEmpty())
+	{
+	    DimDungeons.logMessageInfo("DIMDUNGEONS: deleted " + deletedRegions.size() + " region files of abandoned dungeons.");
+	}
+    }
+
+    // called once the worlds have been loaded
+    public static void finishReclaimedRegions(MinecraftServer server)
+    {
+	if (!deletedRegions.isEmpty())
+	{
+	    DungeonRegistry.get(server).finishReclaim(deletedRegions);
+	    deletedRegions.clear();
+	}
+    }
+
+    public static void clear()
+    {
+	scanQueue.clear();
+	nextScanTick = 0;
+	deletedRegions.clear();
+    }
+}
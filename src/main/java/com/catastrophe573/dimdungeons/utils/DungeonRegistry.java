@@ -0,0 +1,366 @@
+package com.catastrophe573.dimdungeons.utils;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import com.catastrophe573.dimdungeons.DimDungeons;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.DimensionType;
+import net.minecraft.world.storage.DimensionSavedDataManager;
+import net.minecraft.world.storage.FolderName;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+
+// an index of every dungeon that has been built, so that nobody has to load chunks in the dungeon dimension just to ask if a dungeon is there
+public class DungeonRegistry extends WorldSavedData
+{
+    public static final String DATA_NAME = DimDungeons.MOD_ID + "_registry";
+
+    // everything known about one plot, where plotX and plotZ are the same numbers as dest_x and dest_z on the key
+    public static class DungeonRecord
+    {
+	public final int plotX;
+	public final int plotZ;
+	public final int keyLevel;
+	public final int theme;
+	public final long buildTime;
+	public final List<BlockPos> exitPortals = Lists.newArrayList();
+
+	// every chest and barrel that still has its loot table, for the Bell of Secrets
+	// dungeons built before this was added don't have one, and have to be searched block by block instead
+	public final List<BlockPos> lootContainers = Lists.newArrayList();
+	public boolean lootIndexed;
+
+	// enemies that haven't been spawned yet, or that have been spawned and not killed, see DungeonSpawnManager
+	public final List<SpawnPoint> spawnPoints = Lists.newArrayList();
+
+	// the last time a player was inside this plot, in the same units as buildTime, see DungeonReclaimer
+	public long lastVisited;
+
+	public DungeonRecord(int plotX, int plotZ, int keyLevel, int theme, long buildTime, boolean lootIndexed)
+	{
+	    this.plotX = plotX;
+	    this.plotZ = plotZ;
+	    this.keyLevel = keyLevel;
+	    this.theme = theme;
+	    this.buildTime = buildTime;
+	    this.lastVisited = buildTime;
+	    this.lootIndexed = lootIndexed;
+	}
+    }
+
+    // one enemy from a SummonEnemy data block, which only exists as an entity while players are close by
+    public static class SpawnPoint
+    {
+	public final BlockPos pos;
+	public final String mobId;
+
+	// rolled once when the dungeon was built, and given to the enemy every time it wakes up until it finally dies
+	public final ItemStack offhandKey;
+
+	// how hurt the enemy was when it was last put back to sleep, or 0 if it has never been hurt and put to sleep
+	public float health;
+
+	// the entity that is currently standing in for this spawn point, or null if it is asleep
+	@Nullable
+	public UUID entity;
+	public long lastSeen;
+
+	public SpawnPoint(BlockPos pos, String mobId, ItemStack offhandKey)
+	{
+	    this.pos = pos;
+	    this.mobId = mobId;
+	    this.offhandKey = offhandKey;
+	}
+    }
+
+    private final Map<Long, DungeonRecord> dungeons = Maps.newHashMap();
+
+    // dungeons with at least one spawned enemy, so that putting enemies back to sleep doesn't have to look at every dungeon
+    private final Set<DungeonRecord> awakeDungeons = Sets.newHashSet();
+
+    // region files full of abandoned dungeons, which are deleted the next time the server starts
+    private final Set<Long> reclaimRegions = Sets.newHashSet();
+
+    // false if this registry was created in a world that already had dungeons in it, which can only be found by looking at the blocks
+    private boolean complete = true;
+
+    public DungeonRegistry()
+    {
+	super(DATA_NAME);
+    }
+
+    // the registry is saved along with the dungeon dimension, so resetting the dimension also resets the registry
+    public static DungeonRegistry get(MinecraftServer server)
+    {
+	DimensionSavedDataManager storage = DungeonUtils.getDungeonWorld(server).getDataStorage();
+	DungeonRegistry registry = storage.get(DungeonRegistry::new, DATA_NAME);
+	if (registry == null)
+	{
+	    registry = new DungeonRegistry();
+	    registry.complete = !hasExistingRegionFiles(server);
+	    if (!registry.complete)
+	    {
+		DimDungeons.logMessageWarn("DIMDUNGEONS: the dungeon dimension was created by an older version, dungeons built before now will be registered as they are found.");
+	    }
+	    registry.setDirty();
+	    storage.set(registry);
+	}
+	return registry;
+    }
+
+    private static boolean hasExistingRegionFiles(MinecraftServer server)
+    {
+	File regionFolder = new File(DimensionType.getStorageFolder(DimDungeons.DUNGEON_DIMENSION, server.getWorldPath(FolderName.ROOT).toFile()), "region");
+	String[] files = regionFolder.list();
+	return files != null && files.length > 0;
+    }
+
+    public boolean isComplete()
+    {
+	return complete;
+    }
+
+    public boolean hasDungeon(int plotX, int plotZ)
+    {
+	return dungeons.containsKey(ChunkPos.asLong(plotX, plotZ));
+    }
+
+    @Nullable
+    public DungeonRecord getDungeon(int plotX, int plotZ)
+    {
+	return dungeons.get(ChunkPos.asLong(plotX, plotZ));
+    }
+
+    public Collection<DungeonRecord> getAllDungeons()
+    {
+	return dungeons.values();
+    }
+
+    public DungeonRecord addDungeon(int plotX, int plotZ, int keyLevel, int theme)
+    {
+	DungeonRecord record = new DungeonRecord(plotX, plotZ, keyLevel, theme, System.currentTimeMillis(), true);
+	dungeons.put(ChunkPos.asLong(plotX, plotZ), record);
+	cancelReclaim(DungeonPlots.getRegionKey(plotX, plotZ));
+	setDirty();
+	return record;
+    }
+
+    public void removeDungeon(int plotX, int plotZ)
+    {
+	DungeonRecord record = dungeons.remove(ChunkPos.asLong(plotX, plotZ));
+	if (record != null)
+	{
+	    awakeDungeons.remove(record);
+	    setDirty();
+	}
+    }
+
+    public boolean isReclaiming(long regionKey)
+    {
+	return reclaimRegions.contains(regionKey);
+    }
+
+    public Set<Long> getReclaimRegions()
+    {
+	return reclaimRegions;
+    }
+
+    public void markForReclaim(long regionKey)
+    {
+	if (reclaimRegions.add(regionKey))
+	{
+	    setDirty();
+	}
+    }
+
+    // called when a player walks back into an abandoned dungeon, or a new dungeon is built next to it, before the server has had a chance to restart
+    public void cancelReclaim(long regionKey)
+    {
+	if (reclaimRegions.remove(regionKey))
+	{
+	    DimDungeons.logMessageInfo("DIMDUNGEONS: region " + ChunkPos.getX(regionKey) + ", " + ChunkPos.getZ(regionKey) + " is in use again and will not be reclaimed.");
+	    setDirty();
+	}
+    }
+
+    // called once the region files have been deleted, which leaves nothing of these dungeons behind
+    public void finishReclaim(Set<Long> deletedRegions)
+    {
+	List<DungeonRecord> reclaimed = Lists.newArrayList();
+	for (DungeonRecord record : dungeons.values())
+	{
+	    if (deletedRegions.contains(DungeonPlots.getRegionKey(record.plotX, record.plotZ)))
+	    {
+		reclaimed.add(record);
+	    }
+	}
+	for (DungeonRecord record : reclaimed)
+	{
+	    removeDungeon(record.plotX, record.plotZ);
+	}
+	reclaimRegions.removeAll(deletedRegions);
+	setDirty();
+    }
+
+    public Set<DungeonRecord> getAwakeDungeons()
+    {
+	return awakeDungeons;
+    }
+
+    // called by the SummonEnemy data blocks instead of spawning the enemy right away
+    public void addSpawnPoint(BlockPos pos, String mobId, ItemStack offhandKey)
+    {
+	DungeonRecord record = getDungeon(DungeonPlots.getPlotX(pos.getX()), DungeonPlots.getPlotZ(pos.getZ()));
+	if (record == null)
+	{
+	    DimDungeons.logMessageWarn("DIMDUNGEONS: placed an enemy in an unregistered dungeon at (" + pos.getX() + ", " + pos.getY() + ", " + pos.getZ() + ")");
+	    return;
+	}
+	record.spawnPoints.add(new SpawnPoint(pos.immutable(), mobId, offhandKey));
+	setDirty();
+    }
+
+    // called by the ReturnPortal data block, which could be anywhere inside the entrance room
+    public void addExitPortal(BlockPos pos)
+    {
+	DungeonRecord record = getDungeon(DungeonPlots.getPlotX(pos.getX()), DungeonPlots.getPlotZ(pos.getZ()));
+	if (record == null)
+	{
+	    DimDungeons.logMessageWarn("DIMDUNGEONS: placed an exit portal in an unregistered dungeon at (" + pos.getX() + ", " + pos.getY() + ", " + pos.getZ() + ")");
+	    return;
+	}
+	record.exitPortals.add(pos.immutable());
+	setDirty();
+    }
+
+    // called whenever a loot table is put into a container during generation
+    public void addLootContainer(BlockPos pos)
+    {
+	DungeonRecord record = getDungeon(DungeonPlots.getPlotX(pos.getX()), DungeonPlots.getPlotZ(pos.getZ()));
+	if (record != null && !record.lootContainers.contains(pos))
+	{
+	    record.lootContainers.add(pos.immutable());
+	    setDirty();
+	}
+    }
+
+    // called when a player opens a container, which is when vanilla rolls the loot table
+    public void removeLootContainer(BlockPos pos)
+    {
+	DungeonRecord record = getDungeon(DungeonPlots.getPlotX(pos.getX()), DungeonPlots.getPlotZ(pos.getZ()));
+	if (record != null && record.lootContainers.remove(pos))
+	{
+	    setDirty();
+	}
+    }
+
+    @Override
+    public void load(CompoundNBT nbt)
+    {
+	dungeons.clear();
+	awakeDungeons.clear();
+	reclaimRegions.clear();
+	complete = nbt.getBoolean("complete");
+	for (long region : nbt.getLongArray("reclaim"))
+	{
+	    reclaimRegions.add(region);
+	}
+	ListNBT list = nbt.getList("dungeons", Constants.NBT.TAG_COMPOUND);
+	for (int i = 0; i < list.size(); i++)
+	{
+	    CompoundNBT entry = list.getCompound(i);
+	    DungeonRecord record = new DungeonRecord(entry.getInt("x"), entry.getInt("z"), entry.getInt("level"), entry.getInt("theme"), entry.getLong("built"), entry.contains("loot"));
+	    if (entry.contains("visited"))
+	    {
+		record.lastVisited = entry.getLong("visited");
+	    }
+	    for (long portal : entry.getLongArray("portals"))
+	    {
+		record.exitPortals.add(BlockPos.of(portal));
+	    }
+	    for (long loot : entry.getLongArray("loot"))
+	    {
+		record.lootContainers.add(BlockPos.of(loot));
+	    }
+	    ListNBT spawns = entry.getList("spawns", Constants.NBT.TAG_COMPOUND);
+	    for (int j = 0; j < spawns.size(); j++)
+	    {
+		CompoundNBT spawn = spawns.getCompound(j);
+		SpawnPoint point = new SpawnPoint(BlockPos.of(spawn.getLong("pos")), spawn.getString("mob"), ItemStack.of(spawn.getCompound("key")));
+		point.health = spawn.getFloat("health");
+		if (spawn.hasUUID("entity"))
+		{
+		    point.entity = spawn.getUUID("entity");
+		    point.lastSeen = spawn.getLong("seen");
+		    awakeDungeons.add(record);
+		}
+		record.spawnPoints.add(point);
+	    }
+	    dungeons.put(ChunkPos.asLong(record.plotX, record.plotZ), record);
+	}
+    }
+
+    @Override
+    public CompoundNBT save(CompoundNBT nbt)
+    {
+	ListNBT list = new ListNBT();
+	for (DungeonRecord record : dungeons.values())
+	{
+	    CompoundNBT entry = new CompoundNBT();
+	    entry.putInt("x", record.plotX);
+	    entry.putInt("z", record.plotZ);
+	    entry.putInt("level", record.keyLevel);
+	    entry.putInt("theme", record.theme);
+	    entry.putLong("built", record.buildTime);
+	    entry.putLong("visited", record.lastVisited);
+	    entry.putLongArray("portals", record.exitPortals.stream().mapToLong(BlockPos::asLong).toArray());
+	    if (record.lootIndexed)
+	    {
+		entry.putLongArray("loot", record.lootContainers.stream().mapToLong(BlockPos::asLong).toArray());
+	    }
+	    ListNBT spawns = new ListNBT();
+	    for (SpawnPoint point : record.spawnPoints)
+	    {
+		CompoundNBT spawn = new CompoundNBT();
+		spawn.putLong("pos", point.pos.asLong());
+		spawn.putString("mob", point.mobId);
+		if (!point.offhandKey.isEmpty())
+		{
+		    spawn.put("key", point.offhandKey.save(new CompoundNBT()));
+		}
+		if (point.health > 0)
+		{
+		    spawn.putFloat("health", point.health);
+		}
+		if (point.entity != null)
+		{
+		    spawn.putUUID("entity", point.entity);
+		    spawn.putLong("seen", point.lastSeen);
+		}
+		spawns.add(spawn);
+	    }
+	    entry.put("spawns", spawns);
+	    list.add(entry);
+	}
+	nbt.putBoolean("complete", complete);
+	nbt.putLongArray("reclaim", reclaimRegions.stream().mapToLong(Long::longValue).toArray());
+	nbt.put("dungeons", list);
+	return nbt;
+    }
+}
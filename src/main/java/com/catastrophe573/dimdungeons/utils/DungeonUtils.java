@@ -1,5 +1,7 @@
 package com.catastrophe573.dimdungeons.utils;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.catastrophe573.dimdungeons.DimDungeons;
 import com.catastrophe573.dimdungeons.DungeonConfig;
 import com.catastrophe573.dimdungeons.block.TileEntityGoldPortal;
@@ -7,9 +9,11 @@ import com.catastrophe573.dimdungeons.item.ItemPortalKey;
 import com.catastrophe573.dimdungeons.structure.DungeonPlacementLogicAdvanced;
 import com.catastrophe573.dimdungeons.structure.DungeonPlacementLogicBasic;
 import com.catastrophe573.dimdungeons.structure.DungeonPlacementLogicDebug;
+import com.catastrophe573.dimdungeons.structure.GenerationProfiler;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.RegistryKey;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
@@ -26,7 +30,7 @@ public class DungeonUtils
 	return worldIn.dimension() == World.OVERWORLD;
     }
 
-    // this is the best idea I have for unmapped 1.16.1
+    // this runs first in almost every event handler, for every world, so it has to be cheap
     public static boolean isDimensionDungeon(World worldIn)
     {
 	if (worldIn == null)
@@ -34,7 +38,13 @@ public class DungeonUtils
 	    DimDungeons.logMessageError("FATAL ERROR: This 1.16 port is still broken.");
 	    return false;
 	}
-	return worldIn.dimension().location().getPath() == DimDungeons.dungeon_basic_regname;
+	return isDimensionDungeon(worldIn.dimension());
+    }
+
+    // RegistryKey.create() always hands out the same instance for the same name, and every world keeps its key in a field, so this is one comparison
+    public static boolean isDimensionDungeon(RegistryKey<World> dimension)
+    {
+	return dimension == DimDungeons.DUNGEON_DIMENSION;
     }
 
     // this is used by the dungeon building logic
@@ -43,8 +53,25 @@ public class DungeonUtils
 	return server.getLevel(DimDungeons.DUNGEON_DIMENSION);
     }
 
-    // now returns true if a dungeon was built
+    // now returns true if a dungeon is being built
     public static boolean buildDungeon(World worldIn, DungeonGenData genData)
+    {
+	return buildDungeon(worldIn, genData, () ->
+	{
+	});
+    }
+
+    // returns false if the plot is already taken, otherwise the plot is claimed right away and onEntranceBuilt runs on the server thread as soon as the entrance room exists
+    // the dungeon is designed on a worker thread, so that usually happens a tick or two after this returns
+    public static boolean buildDungeon(World worldIn, DungeonGenData genData, Runnable onEntranceBuilt)
+    {
+	long startNanos = GenerationProfiler.start();
+	boolean started = startDungeon(worldIn, genData, onEntranceBuilt);
+	GenerationProfiler.record(GenerationProfiler.Phase.BUILD_DUNGEON, startNanos);
+	return started;
+    }
+
+    private static boolean startDungeon(World worldIn, DungeonGenData genData, Runnable onEntranceBuilt)
     {
 	// only build dungeons on the server
 	if (worldIn.isClientSide)
@@ -60,8 +87,10 @@ public class DungeonUtils
 
 	ItemPortalKey key = (ItemPortalKey) genData.keyItem.getItem();
 
-	long buildX = (long) key.getDungeonTopLeftX(genData.keyItem);
-	long buildZ = (long) key.getDungeonTopLeftZ(genData.keyItem);
+	long buildX = key.getDungeonTopLeftX(genData.keyItem);
+	long buildZ = key.getDungeonTopLeftZ(genData.keyItem);
+	int plotX = DungeonPlots.getPlotX(buildX);
+	int plotZ = DungeonPlots.getPlotZ(buildZ);
 	long entranceX = buildX + (8 * 16);
 	long entranceZ = buildZ + (11 * 16);
 	ServerWorld dungeonWorld = DungeonUtils.getDungeonWorld(worldIn.getServer());
@@ -72,116 +101,163 @@ public class DungeonUtils
 	    return false;
 	}
 
+	// claim this plot right away, even though most of the dungeon will be built over the next few ticks
+	DungeonRegistry registry = DungeonRegistry.get(worldIn.getServer());
+	registry.addDungeon(plotX, plotZ, key.getKeyLevel(genData.keyItem), genData.dungeonTheme);
+	DimDungeons.logGenerationEvent("dungeon_started", "x", buildX, "z", buildZ, "plot_x", plotX, "plot_z", plotZ, "level", key.getKeyLevel(genData.keyItem), "theme", genData.dungeonTheme);
+
 	if (genData.keyItem.hasCustomHoverName() && DungeonConfig.enableDebugCheats)
 	{
-	    String name = genData.keyItem.getHoverName().getContents();
-	    if (name.contentEquals("DebugOne"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 1, genData);
-		return true;
-	    }
-	    if (name.contentEquals("DebugTwo"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 2, genData);
-		return true;
-	    }
-	    if (name.contentEquals("DebugThree"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 3, genData);
-		return true;
-	    }
-	    if (name.contentEquals("DebugFour"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 4, genData);
-		return true;
-	    }
-	    if (name.contentEquals("bas-4"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 5, genData);
-		return true;
-	    }
-	    if (name.contentEquals("bas-3"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 6, genData);
-		return true;
-	    }
-	    if (name.contentEquals("bas-h"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 7, genData);
-		return true;
-	    }
-	    if (name.contentEquals("bas-c"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 8, genData);
-		return true;
-	    }
-	    if (name.contentEquals("bas-1"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 9, genData);
-		return true;
-	    }
-	    if (name.contentEquals("adv-4"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 10, genData);
-		return true;
-	    }
-	    if (name.contentEquals("adv-3"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 11, genData);
-		return true;
-	    }
-	    if (name.contentEquals("adv-h"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 12, genData);
-		return true;
-	    }
-	    if (name.contentEquals("adv-c"))
-	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 13, genData);
-		return true;
-	    }
-	    if (name.contentEquals("adv-1"))
+	    // debug dungeons are still built all at once
+	    if (placeDebugDungeon(dungeonWorld, buildX, buildZ, genData))
 	    {
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 14, genData);
-		return true;
-	    }
-	    if (name.contains("theme-"))
-	    {
-		String themeStr = name.replaceFirst("theme-", "");
-		genData.dungeonTheme = Integer.parseUnsignedInt(themeStr);
-		DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 15, genData);
+		onEntranceBuilt.run();
 		return true;
 	    }
 	}
 
+	// most of the dungeon is built over the next few ticks, long after the player's key has been moved into the keyhole
+	genData.setKeyItem(genData.keyItem.copy());
+
 	// actually place the dungeon
+	CompletableFuture<Boolean> placed;
 	if (DungeonPlacementLogicBasic.isEntranceChunk(entranceX / 16, entranceZ / 16))
 	{
-	    DungeonPlacementLogicBasic.place(dungeonWorld, buildX, buildZ, genData);
-	    return true;
+	    placed = DungeonPlacementLogicBasic.place(dungeonWorld, buildX, buildZ, genData);
 	}
 	else if (DungeonPlacementLogicAdvanced.isEntranceChunk(entranceX / 16, entranceZ / 16))
 	{
-	    DungeonPlacementLogicAdvanced.place(dungeonWorld, buildX, buildZ, genData);
-	    return true;
+	    placed = DungeonPlacementLogicAdvanced.place(dungeonWorld, buildX, buildZ, genData);
 	}
 	else
 	{
 	    DimDungeons.logMessageError("DIMDUNGEONS FATAL ERROR: trying to build a dungeon at coordinates where no dungeon is supposed to start?");
+	    registry.removeDungeon(plotX, plotZ);
+	    return false;
 	}
 
+	// a failure can complete the future on a worker thread, so always come back to the server thread before touching anything
+	placed.whenCompleteAsync((success, error) ->
+	{
+	    if (error != null || !success)
+	    {
+		DimDungeons.logMessageError("DIMDUNGEONS ERROR: unable to build the dungeon at " + buildX + ", " + buildZ + ", the plot has been released.");
+		DimDungeons.logGenerationEvent("dungeon_failed", "x", buildX, "z", buildZ, "plot_x", plotX, "plot_z", plotZ);
+		registry.removeDungeon(plotX, plotZ);
+		return;
+	    }
+	    onEntranceBuilt.run();
+	}, worldIn.getServer());
+	return true;
+    }
+
+    // the debug keys are named after the test layout they build, returns false for any other name
+    private static boolean placeDebugDungeon(ServerWorld dungeonWorld, long buildX, long buildZ, DungeonGenData genData)
+    {
+	String name = genData.keyItem.getHoverName().getContents();
+	if (name.contentEquals("DebugOne"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 1, genData);
+	    return true;
+	}
+	if (name.contentEquals("DebugTwo"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 2, genData);
+	    return true;
+	}
+	if (name.contentEquals("DebugThree"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 3, genData);
+	    return true;
+	}
+	if (name.contentEquals("DebugFour"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 4, genData);
+	    return true;
+	}
+	if (name.contentEquals("bas-4"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 5, genData);
+	    return true;
+	}
+	if (name.contentEquals("bas-3"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 6, genData);
+	    return true;
+	}
+	if (name.contentEquals("bas-h"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 7, genData);
+	    return true;
+	}
+	if (name.contentEquals("bas-c"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 8, genData);
+	    return true;
+	}
+	if (name.contentEquals("bas-1"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 9, genData);
+	    return true;
+	}
+	if (name.contentEquals("adv-4"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 10, genData);
+	    return true;
+	}
+	if (name.contentEquals("adv-3"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 11, genData);
+	    return true;
+	}
+	if (name.contentEquals("adv-h"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 12, genData);
+	    return true;
+	}
+	if (name.contentEquals("adv-c"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 13, genData);
+	    return true;
+	}
+	if (name.contentEquals("adv-1"))
+	{
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 14, genData);
+	    return true;
+	}
+	if (name.contains("theme-"))
+	{
+	    String themeStr = name.replaceFirst("theme-", "");
+	    genData.dungeonTheme = Integer.parseUnsignedInt(themeStr);
+	    DungeonPlacementLogicDebug.place(dungeonWorld, buildX, buildZ, 15, genData);
+	    return true;
+	}
 	return false;
     }
 
     @SuppressWarnings("deprecation")
     public static boolean dungeonAlreadyExistsHere(World worldIn, long entranceX, long entranceZ)
     {
+	DungeonRegistry registry = DungeonRegistry.get(worldIn.getServer());
+	int plotX = DungeonPlots.getPlotX(entranceX);
+	int plotZ = DungeonPlots.getPlotZ(entranceZ);
+	if (registry.hasDungeon(plotX, plotZ))
+	{
+	    return true;
+	}
+	if (registry.isComplete())
+	{
+	    return false;
+	}
+
+	// dungeons built by older versions aren't in the registry, so look for the entrance room and remember it if it's there
 	BlockState temp = worldIn.getBlockState(new BlockPos(entranceX, 51, entranceZ));
 	if (temp.isAir())
 	{
 	    return false;
 	}
 
+	registry.addDungeon(plotX, plotZ, entranceZ < 0 ? 2 : 1, -1);
 	return true;
     }
 
@@ -189,6 +265,35 @@ public class DungeonUtils
     public static boolean reprogramExistingExitDoorway(World worldIn, long entranceX, long entranceZ, DungeonGenData genData)
     {
 	World ddim = DungeonUtils.getDungeonWorld(worldIn.getServer());
+	DungeonRegistry registry = DungeonRegistry.get(worldIn.getServer());
+	DungeonRegistry.DungeonRecord record = registry.getDungeon(DungeonPlots.getPlotX(entranceX), DungeonPlots.getPlotZ(entranceZ));
+
+	// a complete registry without this dungeon means it was reclaimed (or the dimension was reset), so there is no need to load any chunks to find that out
+	if (record == null && registry.isComplete())
+	{
+	    return false;
+	}
+
+	// the registry knows exactly where the exit portal blocks were placed
+	if (record != null && !record.exitPortals.isEmpty())
+	{
+	    for (BlockPos pos : record.exitPortals)
+	    {
+		TileEntity te = ddim.getBlockEntity(pos);
+		if (te instanceof TileEntityGoldPortal)
+		{
+		    ((TileEntityGoldPortal) te).setDestination(genData.returnPoint.getX() + 0.5D, genData.returnPoint.getY() + 0.1D, genData.returnPoint.getZ() + 0.5D, genData.returnDimension);
+		}
+		else
+		{
+		    DimDungeons.logMessageWarn("DIMDUNGEONS WARNING: why is there no exit portal here? (" + pos.getX() + ", " + pos.getY() + ", " + pos.getZ() + ")");
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	// otherwise this is an older dungeon, so check where the exit portal is supposed to be
 	int zoffset = entranceZ < 0 ? +1 : +2;
 
 	for (int x = 0; x <= 1; x++)
@@ -0,0 +1,75 @@
+package com.catastrophe573.dimdungeons.structure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonRoom;
+import com.catastrophe573.dimdungeons.structure.DungeonBuilderLogic.DungeonType;
+
+// DungeonLayoutEngine replaced the original layout code, and has to design exactly the same dungeon from the same seed so that existing keys don't change
+public class DungeonLayoutEngineTest
+{
+    private static final int SEEDS = 500;
+
+    @BeforeClass
+    public static void setup()
+    {
+	StubDungeonConfig.install();
+    }
+
+    @Test
+    public void basicLayoutsMatchReference()
+    {
+	// 25 is the default size of basic dungeons, and 64 fills the whole grid
+	checkSeeds(DungeonType.BASIC, 0, 25, false);
+	checkSeeds(DungeonType.BASIC, 0, 64, false);
+    }
+
+    @Test
+    public void themedLayoutsMatchReference()
+    {
+	checkSeeds(DungeonType.BASIC, 1, 14, false);
+    }
+
+    @Test
+    public void largeRoomLayoutsMatchReference()
+    {
+	checkSeeds(DungeonType.ADVANCED, 0, 46, true);
+	checkSeeds(DungeonType.ADVANCED, 0, 64, true);
+    }
+
+    private static void checkSeeds(DungeonType type, int theme, int maxNumRooms, boolean useLarge)
+    {
+	for (long seed = 0; seed < SEEDS; seed++)
+	{
+	    Random engineRand = new Random(seed);
+	    DungeonBuilderLogic engine = new DungeonBuilderLogic(engineRand, 0, 0, type, theme);
+	    engine.calculateDungeonShape(maxNumRooms, useLarge);
+
+	    Random referenceRand = new Random(seed);
+	    DungeonBuilderLogic reference = new DungeonBuilderLogic(referenceRand, 0, 0, type, theme);
+	    new DungeonLayoutReference(reference).calculateDungeonShape(maxNumRooms, useLarge);
+
+	    String where = type + " theme " + theme + " size " + maxNumRooms + " seed " + seed;
+	    for (int x = 0; x < 8; x++)
+	    {
+		for (int z = 0; z < 8; z++)
+		{
+		    DungeonRoom expected = reference.finalLayout[x][z];
+		    DungeonRoom actual = engine.finalLayout[x][z];
+		    String cell = where + " at (" + x + ", " + z + ")";
+		    assertEquals(cell, expected.type, actual.type);
+		    assertEquals(cell, expected.rotation, actual.rotation);
+		    assertEquals(cell, expected.structure, actual.structure);
+		}
+	    }
+
+	    // the same number of calls to the Random, or whatever is rolled after the layout would be different
+	    assertEquals(where, referenceRand.nextLong(), engineRand.nextLong());
+	}
+    }
+}